@@ -0,0 +1,94 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.config.RowCacheProperties;
+import cn.itcast.hotel.pojo.Hotel;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 按id读取tb_hotel的本地缓存，按数量和时间淘汰，多个id一次查出所有未命中的。
+ * 本实例修改酒店时清理对应的id；其他实例的修改要等过期，数据库中不存在的id不缓存
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Component
+public class HotelRowCache {
+
+    private final RowCacheProperties properties;
+    private final Cache<Long, Hotel> cache;
+    // 每次清理都加1，用于丢弃清理前就已开始的查询的结果
+    private final AtomicLong generation = new AtomicLong();
+
+    public HotelRowCache(RowCacheProperties properties) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(properties.getMaxSize())
+            .expireAfterWrite(properties.getTtl())
+            .build();
+    }
+
+    /**
+     * 先查缓存，未命中的id一次交给loader查询
+     * @return 命中的在前，查询到的在后，不存在的id没有对应的元素
+     */
+    public List<Hotel> getAll(Collection<Long> ids, Function<Collection<Long>, Collection<Hotel>> loader) {
+        if (!properties.isEnabled()) {
+            return new ArrayList<>(loader.apply(ids));
+        }
+        Map<Long, Hotel> present = cache.getAllPresent(ids);
+        List<Hotel> hotels = new ArrayList<>(ids.size());
+        hotels.addAll(present.values());
+        List<Long> missing = new ArrayList<>(ids.size() - present.size());
+        for (Long id : ids) {
+            if (!present.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return hotels;
+        }
+        long gen = generation.get();
+        Collection<Hotel> loaded = loader.apply(missing);
+        // 查询期间发生过清理，读到的可能是旧数据，不放入缓存
+        if (generation.get() == gen) {
+            for (Hotel hotel : loaded) {
+                cache.put(hotel.getId(), hotel);
+            }
+        }
+        hotels.addAll(loaded);
+        return hotels;
+    }
+
+    /**
+     * 立即清理，当前事务提交后再清理一次，事务期间其他线程读到并缓存的旧数据也会被清掉
+     */
+    public void invalidate(Long id) {
+        evict(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(id);
+                }
+            });
+        }
+    }
+
+    private void evict(Long id) {
+        generation.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+}
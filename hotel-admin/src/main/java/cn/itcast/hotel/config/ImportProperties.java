@@ -0,0 +1,22 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 批量导入酒店相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.import")
+public class ImportProperties {
+    // 每个事务写入的行数，同时也是一次批量插入的行数
+    private int chunkSize = 500;
+    // 最多返回多少条错误明细，超过后只计数
+    private int maxErrors = 1000;
+}
@@ -0,0 +1,29 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 发件箱转发相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.outbox")
+public class OutboxProperties {
+    // 每次从发件箱读取、发送后一起等待确认的消息数
+    private int batchSize = 500;
+    // 没有新事务提交时多久检查一次发件箱
+    private Duration pollInterval = Duration.ofSeconds(1);
+    // 等待一批消息全部被MQ确认的最长时间
+    private Duration confirmTimeout = Duration.ofSeconds(5);
+    // 发送失败后的退避时间，每次翻倍，最长max
+    private Duration retryMin = Duration.ofSeconds(1);
+    private Duration retryMax = Duration.ofMinutes(1);
+}
@@ -0,0 +1,22 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 酒店列表分页相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.paging")
+public class PagingProperties {
+    // 多久重新统计一次酒店总数，两次统计之间按新增、删除增减
+    private Duration countRefreshInterval = Duration.ofMinutes(1);
+}
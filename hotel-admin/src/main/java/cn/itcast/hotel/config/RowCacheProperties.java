@@ -0,0 +1,25 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 按id读取酒店的本地缓存相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.row-cache")
+public class RowCacheProperties {
+    private boolean enabled = true;
+    // 最多缓存的酒店数
+    private long maxSize = 10000;
+    // 过期时间，本实例的修改会立即清理，其他实例的修改最多延迟这么久
+    private Duration ttl = Duration.ofMinutes(5);
+}
@@ -16,4 +16,6 @@ public class MQConstants {
     public static final String HOTEL_INSERT_KEY = "hotel.insert";
     // 删除的RoutingKey
     public static final String HOTEL_DELETE_KEY = "hotel.delete";
+    // 消息头：变更的版本号，单调递增，用作ES的外部版本号
+    public static final String HOTEL_VERSION_HEADER = "hotel-version";
 }
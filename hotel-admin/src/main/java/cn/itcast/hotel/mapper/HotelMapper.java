@@ -2,6 +2,16 @@ package cn.itcast.hotel.mapper;
 
 import cn.itcast.hotel.pojo.Hotel;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 public interface HotelMapper extends BaseMapper<Hotel> {
+
+    /**
+     * 按id游标取下一页，不使用OFFSET，翻到多深都只扫描limit行
+     */
+    @Select("SELECT * FROM tb_hotel WHERE id > #{afterId} ORDER BY id LIMIT #{limit}")
+    List<Hotel> selectAfterId(@Param("afterId") long afterId, @Param("limit") int limit);
 }
@@ -0,0 +1,38 @@
+package cn.itcast.hotel.mapper;
+
+import cn.itcast.hotel.pojo.HotelOutbox;
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface HotelOutboxMapper extends BaseMapper<HotelOutbox> {
+
+    /**
+     * 按写入顺序取最早的一批消息
+     */
+    @Select("SELECT * FROM tb_hotel_outbox ORDER BY id LIMIT #{limit}")
+    List<HotelOutbox> selectOldest(@Param("limit") int limit);
+
+    /**
+     * 在tb_hotel_version中递增这些酒店的版本号：取上一个版本号加1与数据库当前时间(微秒)中较大的一个。
+     * 版本号只来自数据库，多个实例之间的时钟偏差不会让后提交的修改拿到更小的版本号；
+     * 递增时持有这一行的行锁直到事务结束，同一个酒店并发的修改按提交顺序拿到递增的版本号
+     */
+    @Insert("<script>INSERT INTO tb_hotel_version (hotel_id, version) VALUES "
+        + "<foreach collection='ids' item='id' separator=','>(#{id}, UNIX_TIMESTAMP(NOW(6)) * 1000000)</foreach>"
+        + " ON DUPLICATE KEY UPDATE version = GREATEST(version + 1, VALUES(version))</script>")
+    int bumpVersions(@Param("ids") Collection<Long> ids);
+
+    /**
+     * 用tb_hotel_version中的版本号为这些酒店各写入一条消息，必须在同一个事务中先调用bumpVersions
+     */
+    @Insert("<script>INSERT INTO tb_hotel_outbox (hotel_id, routing_key, version) "
+        + "SELECT hotel_id, #{routingKey}, version FROM tb_hotel_version WHERE hotel_id IN "
+        + "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach>"
+        + " ORDER BY hotel_id</script>")
+    int insertFromVersions(@Param("routingKey") String routingKey, @Param("ids") Collection<Long> ids);
+}
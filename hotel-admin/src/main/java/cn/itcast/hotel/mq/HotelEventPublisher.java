@@ -0,0 +1,79 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.constant.MQConstants;
+import cn.itcast.hotel.mapper.HotelOutboxMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 记录酒店变更消息：写入发件箱tb_hotel_outbox，必须与修改tb_hotel在同一个事务中调用，
+ * 事务提交后由HotelOutboxRelay批量发送，回滚时消息也不会发出。
+ * 消息体仍然只是酒店id，消息头带上单调递增的版本号，hotel-demo用它作为ES的外部版本号。
+ * 版本号保存在tb_hotel_version中，每次修改都在同一个事务中递增，不依赖各个实例的时钟，
+ * 酒店删除后这一行仍然保留，重新新增时版本号继续递增
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Component
+public class HotelEventPublisher {
+
+    private final HotelOutboxMapper hotelOutboxMapper;
+    private final HotelOutboxRelay hotelOutboxRelay;
+
+    public HotelEventPublisher(HotelOutboxMapper hotelOutboxMapper, HotelOutboxRelay hotelOutboxRelay) {
+        this.hotelOutboxMapper = hotelOutboxMapper;
+        this.hotelOutboxRelay = hotelOutboxRelay;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishInsert(Long id) {
+        publish(MQConstants.HOTEL_INSERT_KEY, id);
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishDelete(Long id) {
+        publish(MQConstants.HOTEL_DELETE_KEY, id);
+    }
+
+    /**
+     * 批量导入时一批酒店的新增消息，每一步都是一条SQL
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void publishInserts(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        publish(MQConstants.HOTEL_INSERT_KEY, ids);
+    }
+
+    private void publish(String routingKey, Long id) {
+        publish(routingKey, Collections.singletonList(id));
+    }
+
+    private void publish(String routingKey, Collection<Long> ids) {
+        // 1.在数据库中递增版本号
+        hotelOutboxMapper.bumpVersions(ids);
+        // 2.带上版本号写入发件箱
+        hotelOutboxMapper.insertFromVersions(routingKey, ids);
+        wakeupAfterCommit();
+    }
+
+    private void wakeupAfterCommit() {
+        // 提交后立即唤醒转发线程，不用等到下一次轮询
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                hotelOutboxRelay.wakeup();
+            }
+        });
+    }
+
+}
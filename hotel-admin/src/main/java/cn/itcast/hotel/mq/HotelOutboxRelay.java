@@ -0,0 +1,135 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.config.OutboxProperties;
+import cn.itcast.hotel.constant.MQConstants;
+import cn.itcast.hotel.mapper.HotelOutboxMapper;
+import cn.itcast.hotel.pojo.HotelOutbox;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把发件箱中的酒店变更转发到MQ：按写入顺序每次取一批，在同一个channel上连续发送后一起等待publisher confirm，
+ * 全部确认后才从发件箱删除。任何一条未确认时整批留在发件箱，退避后重发，消费端按版本号处理重复消息。
+ * 事务提交后会被唤醒，空闲时按pollInterval轮询。
+ * 多个实例同时转发时同一条消息可能发送多次，结果不变
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelOutboxRelay {
+
+    private final HotelOutboxMapper hotelOutboxMapper;
+    private final RabbitTemplate rabbitTemplate;
+    private final OutboxProperties properties;
+
+    private final Object signal = new Object();
+    // 只在持有signal时访问
+    private boolean signaled;
+    private volatile boolean running;
+    private Thread thread;
+
+    public HotelOutboxRelay(HotelOutboxMapper hotelOutboxMapper, RabbitTemplate rabbitTemplate,
+                            OutboxProperties properties) {
+        this.hotelOutboxMapper = hotelOutboxMapper;
+        this.rabbitTemplate = rabbitTemplate;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = new Thread(this::loop, "hotel-outbox-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.interrupt();
+        thread.join(properties.getConfirmTimeout().toMillis());
+    }
+
+    /**
+     * 有新消息写入发件箱，尽快转发
+     */
+    public void wakeup() {
+        synchronized (signal) {
+            signaled = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void loop() {
+        long backoff = properties.getRetryMin().toMillis();
+        while (running) {
+            try {
+                try {
+                    int sent = relayBatch();
+                    backoff = properties.getRetryMin().toMillis();
+                    // 取满一批说明还有积压，继续发送
+                    if (sent < properties.getBatchSize()) {
+                        await(properties.getPollInterval().toMillis());
+                    }
+                } catch (RuntimeException e) {
+                    if (!running) {
+                        return;
+                    }
+                    log.warn("转发发件箱失败，{}ms后重试", backoff, e);
+                    Thread.sleep(backoff);
+                    backoff = Math.min(backoff * 2, properties.getRetryMax().toMillis());
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void await(long millis) throws InterruptedException {
+        synchronized (signal) {
+            if (!signaled) {
+                signal.wait(millis);
+            }
+            signaled = false;
+        }
+    }
+
+    private int relayBatch() {
+        // 1.按写入顺序取一批
+        List<HotelOutbox> batch = hotelOutboxMapper.selectOldest(properties.getBatchSize());
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        // 2.在同一个channel上全部发出后一起等待确认，任何一条被拒绝或超时都会抛出异常
+        rabbitTemplate.invoke(operations -> {
+            for (HotelOutbox event : batch) {
+                operations.convertAndSend(MQConstants.HOTEL_EXCHANGE, event.getRoutingKey(), event.getHotelId(),
+                    message -> {
+                        message.getMessageProperties().setHeader(MQConstants.HOTEL_VERSION_HEADER,
+                            event.getVersion());
+                        return message;
+                    });
+            }
+            operations.waitForConfirmsOrDie(properties.getConfirmTimeout().toMillis());
+            return null;
+        });
+        // 3.全部确认后删除
+        List<Long> ids = new ArrayList<>(batch.size());
+        for (HotelOutbox event : batch) {
+            ids.add(event.getId());
+        }
+        hotelOutboxMapper.deleteBatchIds(ids);
+        log.debug("转发发件箱中的{}条酒店变更", batch.size());
+        return batch.size();
+    }
+
+}
@@ -0,0 +1,26 @@
+package cn.itcast.hotel.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.util.Date;
+
+/**
+ * 发件箱中的一条酒店变更消息
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@TableName("tb_hotel_outbox")
+public class HotelOutbox {
+    @TableId(type = IdType.AUTO)
+    private Long id;
+    private Long hotelId;
+    private String routingKey;
+    private Long version;
+    private Date createTime;
+}
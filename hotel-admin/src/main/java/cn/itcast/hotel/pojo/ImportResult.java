@@ -0,0 +1,37 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入的结果
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+public class ImportResult {
+    // 读到的数据行数，不含CSV表头和空行
+    private long total;
+    private long imported;
+    private long failed;
+    // 失败行的明细，最多hotel.import.max-errors条
+    private List<RowError> errors = new ArrayList<>();
+    // 耗时，毫秒
+    private long took;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RowError {
+        // 行号，从1开始，CSV的表头是第1行
+        private long line;
+        private Long id;
+        private String message;
+    }
+}
@@ -8,6 +8,8 @@ import java.util.List;
 public class PageResult {
     private Long total;
     private List<Hotel> hotels;
+    // 本页最后一个酒店的id，作为afterId请求下一页；不满一页时为null
+    private Long nextId;
 
     public PageResult() {
     }
@@ -1,8 +1,26 @@
 package cn.itcast.hotel.service;
 
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.PageResult;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 public interface IHotelService extends IService<Hotel> {
 
+    /**
+     * 按id升序分页，总数取缓存的计数
+     * @param afterId 不为空时按id游标取这个id之后的size条，忽略page
+     */
+    PageResult pageHotels(int page, int size, Long afterId);
+
+    // 以下方法在同一个事务中修改tb_hotel并写入变更消息
+    void insertHotel(Hotel hotel);
+
+    /**
+     * 批量插入一批酒店，全部成功或全部失败，整批只写一条INSERT到发件箱
+     */
+    void insertHotels(List<Hotel> hotels);
+    void updateHotel(Hotel hotel);
+    void deleteHotel(Long id);
 }
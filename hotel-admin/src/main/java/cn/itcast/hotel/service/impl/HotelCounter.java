@@ -0,0 +1,89 @@
+package cn.itcast.hotel.service.impl;
+
+import cn.itcast.hotel.config.PagingProperties;
+import cn.itcast.hotel.mapper.HotelMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 缓存的酒店总数，分页时不再每次执行COUNT(*)。
+ * 本实例的新增、删除在事务提交后增减计数，另外定时重新统计一次，修正其他实例或直接改库造成的偏差
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelCounter {
+
+    private final HotelMapper hotelMapper;
+    private final PagingProperties properties;
+    // 小于0表示还没有统计过
+    private final AtomicLong count = new AtomicLong(-1);
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "hotel-counter"));
+
+    public HotelCounter(HotelMapper hotelMapper, PagingProperties properties) {
+        this.hotelMapper = hotelMapper;
+        this.properties = properties;
+    }
+
+    @PostConstruct
+    public void start() {
+        long interval = properties.getCountRefreshInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException e) {
+                log.warn("统计酒店总数失败", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public long get() {
+        long current = count.get();
+        return current < 0 ? refresh() : current;
+    }
+
+    /**
+     * 当前事务提交后增减计数，没有事务时立即生效
+     */
+    public void adjust(long delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            add(delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                add(delta);
+            }
+        });
+    }
+
+    private void add(long delta) {
+        count.getAndUpdate(current -> current < 0 ? current : Math.max(0, current + delta));
+    }
+
+    private long refresh() {
+        long total = hotelMapper.selectCount(null);
+        count.set(total);
+        return total;
+    }
+
+}
@@ -0,0 +1,169 @@
+package cn.itcast.hotel.service.impl;
+
+import cn.itcast.hotel.config.ImportProperties;
+import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.ImportResult;
+import cn.itcast.hotel.service.IHotelService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入酒店：按行读取NDJSON或CSV，不把整个请求体读进内存，每chunkSize行在一个事务中批量插入并写一次发件箱。
+ * 整批写入失败时逐行重试找出失败的行，解析、校验或写入失败的行都记入结果，不影响其他行。
+ * CSV的第一行是表头，列名与Hotel的属性名相同；每一行内不支持换行
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelImporter {
+
+    private static final ObjectReader JSON_READER = new ObjectMapper().readerFor(Hotel.class);
+    private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+    private final IHotelService hotelService;
+    private final ImportProperties properties;
+
+    public HotelImporter(IHotelService hotelService, ImportProperties properties) {
+        this.hotelService = hotelService;
+        this.properties = properties;
+    }
+
+    /**
+     * @param csv 为false时按NDJSON解析
+     */
+    public ImportResult importHotels(InputStream in, boolean csv) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportResult result = new ImportResult();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        // CSV要读到表头后才知道列的顺序
+        ObjectReader rowReader = csv ? null : JSON_READER;
+        List<Hotel> chunk = new ArrayList<>(properties.getChunkSize());
+        List<Long> lines = new ArrayList<>(properties.getChunkSize());
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (!StringUtils.hasText(line)) {
+                continue;
+            }
+            if (rowReader == null) {
+                rowReader = csvReader(line);
+                continue;
+            }
+            // 1.解析、校验
+            result.setTotal(result.getTotal() + 1);
+            Hotel hotel;
+            try {
+                hotel = rowReader.readValue(line);
+                validate(hotel);
+            } catch (IOException | IllegalArgumentException e) {
+                addError(result, lineNumber, null, e);
+                continue;
+            }
+            // 2.攒够一批写入
+            chunk.add(hotel);
+            lines.add(lineNumber);
+            if (chunk.size() >= properties.getChunkSize()) {
+                flush(chunk, lines, result);
+            }
+        }
+        flush(chunk, lines, result);
+        result.setTook(System.currentTimeMillis() - start);
+        log.info("导入酒店{}行，成功{}行，失败{}行，耗时{}ms", result.getTotal(), result.getImported(),
+            result.getFailed(), result.getTook());
+        return result;
+    }
+
+    private static ObjectReader csvReader(String header) throws IOException {
+        String[] columns = CSV_MAPPER.readerFor(String[].class).readValue(header);
+        CsvSchema.Builder schema = CsvSchema.builder();
+        for (String column : columns) {
+            schema.addColumn(column.trim());
+        }
+        return CSV_MAPPER.readerFor(Hotel.class).with(schema.build());
+    }
+
+    /**
+     * 检查同步到ES时构建HotelDoc要用到的字段，缺了这些字段的行写进数据库后也无法建立索引
+     */
+    static void validate(Hotel hotel) {
+        if (hotel.getId() == null) {
+            throw new IllegalArgumentException("id不能为空");
+        }
+        if (!StringUtils.hasText(hotel.getName())) {
+            throw new IllegalArgumentException("name不能为空");
+        }
+        // 商圈要拆分成自动补全的词条
+        if (!StringUtils.hasText(hotel.getBusiness())) {
+            throw new IllegalArgumentException("business不能为空");
+        }
+        // 经纬度拼成location，按距离排序
+        checkCoordinate("latitude", hotel.getLatitude(), 90);
+        checkCoordinate("longitude", hotel.getLongitude(), 180);
+    }
+
+    private static void checkCoordinate(String name, String value, double bound) {
+        if (!StringUtils.hasText(value)) {
+            throw new IllegalArgumentException(name + "不能为空");
+        }
+        double coordinate;
+        try {
+            coordinate = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + "不是数字：" + value);
+        }
+        if (Double.isNaN(coordinate) || Math.abs(coordinate) > bound) {
+            throw new IllegalArgumentException(name + "超出范围：" + value);
+        }
+    }
+
+    private void flush(List<Hotel> chunk, List<Long> lines, ImportResult result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            hotelService.insertHotels(chunk);
+            result.setImported(result.getImported() + chunk.size());
+        } catch (RuntimeException e) {
+            // 整批已回滚，逐行写入找出失败的行
+            log.warn("批量写入{}行失败，逐行重试：{}", chunk.size(), e.getMessage());
+            for (int i = 0; i < chunk.size(); i++) {
+                Hotel hotel = chunk.get(i);
+                try {
+                    hotelService.insertHotel(hotel);
+                    result.setImported(result.getImported() + 1);
+                } catch (RuntimeException rowError) {
+                    addError(result, lines.get(i), hotel.getId(), rowError);
+                }
+            }
+        }
+        chunk.clear();
+        lines.clear();
+    }
+
+    private void addError(ImportResult result, long line, Long id, Exception e) {
+        result.setFailed(result.getFailed() + 1);
+        if (result.getErrors().size() < properties.getMaxErrors()) {
+            String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+            result.getErrors().add(new ImportResult.RowError(line, id, message));
+        }
+    }
+
+}
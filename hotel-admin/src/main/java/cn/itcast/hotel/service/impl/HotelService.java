@@ -1,11 +1,108 @@
 package cn.itcast.hotel.service.impl;
 
+import cn.itcast.hotel.cache.HotelRowCache;
 import cn.itcast.hotel.mapper.HotelMapper;
+import cn.itcast.hotel.mq.HotelEventPublisher;
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.PageResult;
 import cn.itcast.hotel.service.IHotelService;
+import com.baomidou.mybatisplus.core.toolkit.Wrappers;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 
 @Service
 public class HotelService extends ServiceImpl<HotelMapper, Hotel> implements IHotelService {
+
+    @Autowired
+    private HotelEventPublisher hotelEventPublisher;
+
+    @Autowired
+    private HotelCounter hotelCounter;
+
+    @Autowired
+    private HotelRowCache hotelRowCache;
+
+    @Override
+    public Hotel getById(Serializable id) {
+        List<Hotel> hotels = listByIds(Collections.singletonList(id));
+        return hotels.isEmpty() ? null : hotels.get(0);
+    }
+
+    @Override
+    public List<Hotel> listByIds(Collection<? extends Serializable> idList) {
+        Set<Long> ids = new LinkedHashSet<>(idList.size() * 2);
+        for (Serializable id : idList) {
+            ids.add(id instanceof Long ? (Long) id : Long.valueOf(id.toString()));
+        }
+        return hotelRowCache.getAll(ids, super::listByIds);
+    }
+
+    @Override
+    public PageResult pageHotels(int page, int size, Long afterId) {
+        List<Hotel> hotels;
+        if (afterId != null) {
+            hotels = baseMapper.selectAfterId(afterId, size);
+        } else {
+            // 不执行COUNT(*)，总数取缓存的计数
+            hotels = page(new Page<>(page, size, false), Wrappers.<Hotel>query().orderByAsc("id")).getRecords();
+        }
+        PageResult result = new PageResult(hotelCounter.get(), hotels);
+        if (hotels.size() == size) {
+            result.setNextId(hotels.get(hotels.size() - 1).getId());
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional
+    public void insertHotel(Hotel hotel) {
+        save(hotel);
+        hotelRowCache.invalidate(hotel.getId());
+        hotelCounter.adjust(1);
+        // 发送整个对象比较消耗内存，可以只发酒店id
+        hotelEventPublisher.publishInsert(hotel.getId());
+    }
+
+    @Override
+    @Transactional
+    public void insertHotels(List<Hotel> hotels) {
+        // 同一个事务内用JDBC批量插入，配合rewriteBatchedStatements合并成多行INSERT
+        saveBatch(hotels, hotels.size());
+        List<Long> ids = new ArrayList<>(hotels.size());
+        for (Hotel hotel : hotels) {
+            ids.add(hotel.getId());
+            hotelRowCache.invalidate(hotel.getId());
+        }
+        hotelCounter.adjust(hotels.size());
+        hotelEventPublisher.publishInserts(ids);
+    }
+
+    @Override
+    @Transactional
+    public void updateHotel(Hotel hotel) {
+        updateById(hotel);
+        hotelRowCache.invalidate(hotel.getId());
+        hotelEventPublisher.publishInsert(hotel.getId());
+    }
+
+    @Override
+    @Transactional
+    public void deleteHotel(Long id) {
+        hotelRowCache.invalidate(id);
+        if (removeById(id)) {
+            hotelCounter.adjust(-1);
+        }
+        hotelEventPublisher.publishDelete(id);
+    }
 }
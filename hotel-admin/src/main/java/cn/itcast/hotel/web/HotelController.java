@@ -1,14 +1,15 @@
 package cn.itcast.hotel.web;
 
-import cn.itcast.hotel.constant.MQConstants;
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.ImportResult;
 import cn.itcast.hotel.pojo.PageResult;
 import cn.itcast.hotel.service.IHotelService;
-import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import cn.itcast.hotel.service.impl.HotelImporter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.security.InvalidParameterException;
 
 @RestController
@@ -19,7 +20,7 @@ public class HotelController {
     private IHotelService hotelService;
 
     @Autowired
-    private RabbitTemplate rabbitTemplate;
+    private HotelImporter hotelImporter;
 
     @GetMapping("/{id}")
     public Hotel queryById(@PathVariable("id") Long id){
@@ -29,18 +30,25 @@ public class HotelController {
     @GetMapping("/list")
     public PageResult hotelList(
             @RequestParam(value = "page", defaultValue = "1") Integer page,
-            @RequestParam(value = "size", defaultValue = "1") Integer size
+            @RequestParam(value = "size", defaultValue = "1") Integer size,
+            // 上一页返回的nextId，第一页传0，传了就按id游标翻页
+            @RequestParam(value = "afterId", required = false) Long afterId
     ){
-        Page<Hotel> result = hotelService.page(new Page<>(page, size));
-
-        return new PageResult(result.getTotal(), result.getRecords());
+        return hotelService.pageHotels(page, size, afterId);
     }
 
     @PostMapping
     public void saveHotel(@RequestBody Hotel hotel){
-        hotelService.save(hotel);
-        // 发送整个对象比较消耗内存，可以只发酒店id
-        rabbitTemplate.convertAndSend(MQConstants.HOTEL_EXCHANGE, MQConstants.HOTEL_INSERT_KEY, hotel.getId());
+        hotelService.insertHotel(hotel);
+    }
+
+    /**
+     * 批量导入，请求体为NDJSON(application/x-ndjson)或带表头的CSV(text/csv)，边读边写
+     */
+    @PostMapping(value = "/import", consumes = {"application/x-ndjson", "text/csv"})
+    public ImportResult importHotels(@RequestHeader("Content-Type") String contentType, InputStream body)
+            throws IOException {
+        return hotelImporter.importHotels(body, contentType.startsWith("text/csv"));
     }
 
     @PutMapping()
@@ -48,13 +56,11 @@ public class HotelController {
         if (hotel.getId() == null) {
             throw new InvalidParameterException("id不能为空");
         }
-        hotelService.updateById(hotel);
-        rabbitTemplate.convertAndSend(MQConstants.HOTEL_EXCHANGE, MQConstants.HOTEL_INSERT_KEY, hotel.getId());
+        hotelService.updateHotel(hotel);
     }
 
     @DeleteMapping("/{id}")
     public void deleteById(@PathVariable("id") Long id) {
-        hotelService.removeById(id);
-        rabbitTemplate.convertAndSend(MQConstants.HOTEL_EXCHANGE, MQConstants.HOTEL_DELETE_KEY, id);
+        hotelService.deleteHotel(id);
     }
 }
@@ -0,0 +1,9 @@
+-- 酒店变更的发件箱，与tb_hotel在同一个事务中写入，由HotelOutboxRelay发送到MQ后删除
+CREATE TABLE IF NOT EXISTS `tb_hotel_outbox` (
+  `id` bigint(20) NOT NULL AUTO_INCREMENT,
+  `hotel_id` bigint(20) NOT NULL COMMENT '酒店id',
+  `routing_key` varchar(32) NOT NULL COMMENT 'hotel.insert或hotel.delete',
+  `version` bigint(20) NOT NULL COMMENT '变更的版本号，取自tb_hotel_version，作为消息头hotel-version发送',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,7 @@
+-- 酒店变更的版本号，每次修改酒店时在同一个事务中递增，写入发件箱的消息带上它作为ES的外部版本号
+-- 酒店删除后保留这一行，同一个id重新新增时版本号继续递增
+CREATE TABLE IF NOT EXISTS `tb_hotel_version` (
+  `hotel_id` bigint(20) NOT NULL COMMENT '酒店id',
+  `version` bigint(20) NOT NULL COMMENT '最新的版本号，不小于递增时数据库的微秒时间戳',
+  PRIMARY KEY (`hotel_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
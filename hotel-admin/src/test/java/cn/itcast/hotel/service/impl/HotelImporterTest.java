@@ -0,0 +1,127 @@
+package cn.itcast.hotel.service.impl;
+
+import cn.itcast.hotel.config.ImportProperties;
+import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.ImportResult;
+import cn.itcast.hotel.service.IHotelService;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class HotelImporterTest {
+
+    private final IHotelService hotelService = mock(IHotelService.class);
+    private final ImportProperties properties = new ImportProperties();
+    private final HotelImporter importer = new HotelImporter(hotelService, properties);
+
+    @Test
+    void rowsAreWrittenInChunks() throws IOException {
+        properties.setChunkSize(2);
+        List<Integer> chunkSizes = new ArrayList<>();
+        doAnswer(invocation -> chunkSizes.add(invocation.<List<Hotel>>getArgument(0).size()))
+            .when(hotelService).insertHotels(anyList());
+
+        ImportResult result = importHotels(json(1), json(2), json(3));
+
+        assertEquals(3, result.getImported());
+        assertEquals(0, result.getFailed());
+        assertEquals(2, chunkSizes.get(0).intValue());
+        assertEquals(1, chunkSizes.get(1).intValue());
+        verify(hotelService, never()).insertHotel(any());
+    }
+
+    @Test
+    void failedChunkFallsBackToSingleRows() throws IOException {
+        // 第2行违反唯一约束，整批回滚后逐行写入，只有它失败
+        doThrow(new IllegalStateException("batch failed")).when(hotelService).insertHotels(anyList());
+        doThrow(new IllegalStateException("duplicate id 2"))
+            .when(hotelService).insertHotel(argThat(hotel -> hotel.getId() == 2L));
+
+        ImportResult result = importHotels(json(1), json(2), json(3));
+
+        assertEquals(3, result.getTotal());
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getFailed());
+        ImportResult.RowError error = result.getErrors().get(0);
+        assertEquals(2, error.getLine());
+        assertEquals(Long.valueOf(2), error.getId());
+        assertEquals("duplicate id 2", error.getMessage());
+        verify(hotelService, times(3)).insertHotel(any());
+    }
+
+    @Test
+    void rowsMissingDocFieldsAreRejected() throws IOException {
+        List<Long> written = new ArrayList<>();
+        doAnswer(invocation -> {
+            for (Hotel hotel : invocation.<List<Hotel>>getArgument(0)) {
+                written.add(hotel.getId());
+            }
+            return null;
+        }).when(hotelService).insertHotels(anyList());
+
+        ImportResult result = importHotels(
+            json(1),
+            "{\"id\":2,\"name\":\"如家\",\"latitude\":\"31.2\",\"longitude\":\"121.4\"}",
+            "{\"id\":3,\"name\":\"如家\",\"business\":\"外滩\",\"longitude\":\"121.4\"}",
+            "{\"id\":4,\"name\":\"如家\",\"business\":\"外滩\",\"latitude\":\"north\",\"longitude\":\"121.4\"}",
+            "{\"id\":5,\"name\":\"如家\",\"business\":\"外滩\",\"latitude\":\"31.2\",\"longitude\":\"190\"}",
+            "{\"name\":\"如家\",\"business\":\"外滩\",\"latitude\":\"31.2\",\"longitude\":\"121.4\"}",
+            "not json");
+
+        assertEquals(7, result.getTotal());
+        assertEquals(1, result.getImported());
+        assertEquals(6, result.getFailed());
+        assertTrue(result.getErrors().get(0).getMessage().contains("business"));
+        assertTrue(result.getErrors().get(1).getMessage().contains("latitude"));
+        assertTrue(result.getErrors().get(2).getMessage().contains("latitude"));
+        assertTrue(result.getErrors().get(3).getMessage().contains("longitude"));
+        assertTrue(result.getErrors().get(4).getMessage().contains("id"));
+        assertEquals(7, result.getErrors().get(5).getLine());
+        // 被拒绝的行不会写入
+        assertEquals(Collections.singletonList(1L), written);
+    }
+
+    @Test
+    void csvRowsAreValidatedToo() throws IOException {
+        String csv = "id,name,business,latitude,longitude\n"
+            + "1,如家,外滩,31.2,121.4\n"
+            + "2,如家,,31.2,121.4\n";
+
+        ImportResult result = importer.importHotels(stream(csv), true);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getFailed());
+        assertEquals(3, result.getErrors().get(0).getLine());
+    }
+
+    private ImportResult importHotels(String... rows) throws IOException {
+        return importer.importHotels(stream(String.join("\n", rows)), false);
+    }
+
+    private static String json(long id) {
+        return "{\"id\":" + id + ",\"name\":\"如家" + id + "\",\"business\":\"外滩\","
+            + "\"latitude\":\"31.2\",\"longitude\":\"121.4\"}";
+    }
+
+    private static ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -3,9 +3,11 @@ package cn.itcast.hotel;
 import org.mybatis.spring.annotation.MapperScan;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @MapperScan("cn.itcast.hotel.mapper")
 @SpringBootApplication
+@EnableScheduling
 public class HotelDemoApplication {
 
     public static void main(String[] args) {
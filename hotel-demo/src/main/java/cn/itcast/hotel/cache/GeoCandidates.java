@@ -0,0 +1,28 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.pojo.HotelDoc;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一个geohash格子内的附近酒店候选集，按到格子中心的距离升序
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GeoCandidates {
+    // 符合条件的酒店总数
+    private Long total;
+    private List<HotelDoc> hotels;
+    // 最远的候选酒店到格子中心的距离，单位km
+    private Double radius;
+    // 是否已包含全部符合条件的酒店
+    private boolean complete;
+}
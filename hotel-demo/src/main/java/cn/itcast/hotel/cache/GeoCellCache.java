@@ -0,0 +1,281 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.config.SearchCacheProperties;
+import cn.itcast.hotel.config.SearchProperties;
+import cn.itcast.hotel.constant.HotelView;
+import cn.itcast.hotel.constant.TotalHitsPolicy;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.PageResult;
+import cn.itcast.hotel.pojo.RequestParams;
+import cn.itcast.hotel.service.impl.SearchCursor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.common.geo.GeoDistance;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.elasticsearch.common.unit.DistanceUnit;
+import org.elasticsearch.geometry.Rectangle;
+import org.elasticsearch.geometry.utils.Geohash;
+import org.springframework.beans.BeanUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 按距离排序的"附近酒店"搜索缓存。
+ * 用户坐标各不相同，整页结果无法复用，这里按坐标所在的geohash格子缓存离格子中心最近的一批候选酒店，
+ * 同一个格子内的用户共享候选集，在本地按到用户的精确距离重新排序、分页。
+ * 候选集只覆盖以格子中心为圆心、radius为半径的圆，离用户超过 radius - 格子半对角线 的酒店可能漏掉，
+ * 页面越过这个安全半径时返回null，由调用方退回ES查询。
+ * 本地距离按_source中的坐标计算，与ES按量化后的坐标算出的排序值有微小差别，两边的游标不能混用：
+ * 这里生成的游标带local标记，ES生成的游标不走候选集；退回ES时由调用方把local游标换成ES的排序值。
+ * 指标以 cache.* (cache=hotelGeoCell) 的名字注册到 MeterRegistry
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class GeoCellCache {
+
+    private static final Comparator<Ranked> ORDER = Comparator.<Ranked>comparingDouble(r -> r.distance)
+        .thenComparing(r -> r.id);
+
+    private final SearchCacheProperties properties;
+    private final SearchProperties searchProperties;
+    private final Cache<GeoCellKey, GeoCandidates> cache;
+    // 每次清理都加1，用于丢弃清理前就已发出的查询的结果
+    private final AtomicLong generation = new AtomicLong();
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "geo-cache-invalidator"));
+
+    public GeoCellCache(SearchCacheProperties properties, SearchProperties searchProperties,
+                        MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.searchProperties = searchProperties;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getGeoMaxWeight())
+            .weigher((GeoCellKey key, GeoCandidates value) -> 64 + SearchResultCache.weigh(value.getHotels()))
+            .expireAfterWrite(properties.getTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "hotelGeoCell");
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 是否可以走候选集缓存，只处理带坐标的搜索
+     */
+    public boolean supports(RequestParams params) {
+        if (!isEnabled() || StringUtils.isEmpty(params.getLocation())) {
+            return false;
+        }
+        if (!StringUtils.hasText(params.getCursor())) {
+            return true;
+        }
+        try {
+            return SearchCursor.decode(params.getCursor()).isLocal();
+        } catch (IllegalArgumentException e) {
+            // 无效的游标交给ES查询报错
+            return false;
+        }
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled() && properties.isGeoEnabled();
+    }
+
+    public int candidateSize() {
+        return properties.getGeoCandidates();
+    }
+
+    public GeoCellKey keyOf(RequestParams params) {
+        GeoPoint point = new GeoPoint(params.getLocation());
+        String cell = Geohash.stringEncode(point.lon(), point.lat(), properties.getGeoPrecision());
+        return new GeoCellKey(cell, SearchKey.forFilters(params), HotelView.of(params.getView()));
+    }
+
+    /**
+     * 格子中心，候选集按到它的距离查询
+     */
+    public static GeoPoint center(String cell) {
+        Rectangle box = Geohash.toBoundingBox(cell);
+        return new GeoPoint((box.getMinLat() + box.getMaxLat()) / 2, (box.getMinLon() + box.getMaxLon()) / 2);
+    }
+
+    /**
+     * 先查候选集缓存，未命中时调用loader查询并放入缓存，再按用户坐标排序分页
+     * @return 本页超出候选集的安全半径时返回null
+     */
+    public PageResult search(RequestParams params, Function<GeoCellKey, GeoCandidates> loader) {
+        GeoCellKey key = keyOf(params);
+        GeoCandidates candidates = cache.getIfPresent(key);
+        if (candidates == null) {
+            long gen = generation.get();
+            candidates = loader.apply(key);
+            // 查询期间发生过清理，候选集可能是旧的，不放入缓存
+            if (generation.get() == gen) {
+                cache.put(key, candidates);
+            }
+        }
+        return rank(params, key, candidates);
+    }
+
+    /**
+     * search的异步版本
+     */
+    public CompletableFuture<PageResult> searchAsync(RequestParams params,
+                                                     Function<GeoCellKey, CompletableFuture<GeoCandidates>> loader) {
+        GeoCellKey key = keyOf(params);
+        GeoCandidates cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(rank(params, key, cached));
+        }
+        long gen = generation.get();
+        CompletableFuture<GeoCandidates> loading = loader.apply(key);
+        CompletableFuture<PageResult> result = loading.thenApply(candidates -> {
+            if (generation.get() == gen) {
+                cache.put(key, candidates);
+            }
+            return rank(params, key, candidates);
+        });
+        // thenApply得到的future取消时不会取消上游，这里手动传递
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                loading.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 清理可能受酒店变更影响的候选集
+     * @param states 变更前后的酒店，只用到city、brand、starName、price
+     */
+    public void invalidate(Collection<HotelDoc> states) {
+        if (!isEnabled() || states.isEmpty()) {
+            return;
+        }
+        List<HotelDoc> snapshot = new ArrayList<>(states);
+        removeMatching(snapshot);
+        // 与搜索结果缓存相同，索引刷新后再清理一次
+        scheduler.schedule(() -> removeMatching(snapshot),
+            properties.getRefreshDelay().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void removeMatching(List<HotelDoc> states) {
+        generation.incrementAndGet();
+        int removed = 0;
+        for (GeoCellKey key : cache.asMap().keySet()) {
+            for (HotelDoc state : states) {
+                if (key.mayMatch(state)) {
+                    cache.invalidate(key);
+                    removed++;
+                    break;
+                }
+            }
+        }
+        log.debug("{}个酒店变更，清理附近酒店候选集{}条", states.size(), removed);
+    }
+
+    PageResult rank(RequestParams params, GeoCellKey key, GeoCandidates candidates) {
+        // 1.按到用户的距离重新排序，距离相同时按id，与ES的排序一致
+        GeoPoint origin = new GeoPoint(params.getLocation());
+        List<Ranked> ranked = new ArrayList<>(candidates.getHotels().size());
+        for (HotelDoc hotel : candidates.getHotels()) {
+            GeoPoint point = new GeoPoint(hotel.getLocation());
+            double distance = GeoDistance.ARC.calculate(origin.lat(), origin.lon(), point.lat(), point.lon(),
+                DistanceUnit.KILOMETERS);
+            ranked.add(new Ranked(hotel, distance));
+        }
+        ranked.sort(ORDER);
+        // 2.定位本页
+        int size = params.getSize();
+        String sort = SearchCursor.sortOf(params.getLocation());
+        int start;
+        if (StringUtils.hasText(params.getCursor())) {
+            Object[] after = SearchCursor.decode(params.getCursor(), sort).getAfter();
+            Ranked last = new Ranked(null, ((Number) after[0]).doubleValue(), String.valueOf(after[1]));
+            start = 0;
+            while (start < ranked.size() && ORDER.compare(ranked.get(start), last) <= 0) {
+                start++;
+            }
+        } else {
+            start = (params.getPage() - 1) * size;
+        }
+        int end = Math.min(start + size, ranked.size());
+        // 3.候选集不完整时，只有在安全半径内的酒店才能保证没有遗漏
+        if (!candidates.isComplete()) {
+            double safeRadius = candidates.getRadius() - halfDiagonal(key.getCell());
+            if (end < start + size || ranked.get(end - 1).distance > safeRadius) {
+                return null;
+            }
+        }
+        // 4.组装结果，复制一份再设置距离，缓存中的候选酒店不变
+        List<HotelDoc> hotels = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            HotelDoc hotelDoc = new HotelDoc();
+            BeanUtils.copyProperties(ranked.get(i).hotel, hotelDoc);
+            hotelDoc.setDistance(ranked.get(i).distance);
+            hotels.add(hotelDoc);
+        }
+        PageResult result = new PageResult(candidates.getTotal(), hotels);
+        // 5.候选集的总数是精确的，按请求的统计方式返回
+        TotalHitsPolicy policy = TotalHitsPolicy.of(params.getTotalHits(), searchProperties.getTotalHits());
+        if (policy == TotalHitsPolicy.CAPPED && candidates.getTotal() > searchProperties.getTotalHitsCap()) {
+            result.setTotal((long) searchProperties.getTotalHitsCap());
+            result.setTotalApprox(true);
+        } else if (policy == TotalHitsPolicy.NONE) {
+            result.setTotal(null);
+            result.setHasMore(end < candidates.getTotal());
+        }
+        if (!hotels.isEmpty() && hotels.size() == size) {
+            Ranked last = ranked.get(end - 1);
+            result.setCursor(SearchCursor.encodeLocal(sort, new Object[]{last.distance, last.id}));
+        }
+        return result;
+    }
+
+    // 格子内任意一点到格子中心的最大距离，单位km
+    static double halfDiagonal(String cell) {
+        Rectangle box = Geohash.toBoundingBox(cell);
+        GeoPoint center = center(cell);
+        return GeoDistance.ARC.calculate(center.lat(), center.lon(), box.getMaxLat(), box.getMaxLon(),
+            DistanceUnit.KILOMETERS);
+    }
+
+    private static class Ranked {
+        private final HotelDoc hotel;
+        private final double distance;
+        private final String id;
+
+        Ranked(HotelDoc hotel, double distance) {
+            this(hotel, distance, String.valueOf(hotel.getId()));
+        }
+
+        Ranked(HotelDoc hotel, double distance, String id) {
+            this.hotel = hotel;
+            this.distance = distance;
+            this.id = id;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.constant.HotelView;
+import cn.itcast.hotel.pojo.HotelDoc;
+import lombok.Value;
+
+/**
+ * 附近酒店候选集缓存的key：geohash格子、搜索条件和字段投影
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Value
+public class GeoCellKey {
+    String cell;
+    SearchKey filters;
+    HotelView view;
+
+    public boolean mayMatch(HotelDoc hotel) {
+        return filters.mayMatch(hotel);
+    }
+}
@@ -0,0 +1,104 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.constant.HotelView;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.RequestParams;
+import lombok.Value;
+import org.springframework.util.StringUtils;
+
+/**
+ * 规范化后的搜索条件，作为搜索结果缓存的key
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Value
+public class SearchKey {
+    String key;
+    Integer page;
+    Integer size;
+    String sortBy;
+    String brand;
+    String city;
+    String starName;
+    Integer minPrice;
+    Integer maxPrice;
+    String cursor;
+    String location;
+    HotelView view;
+    String totalHits;
+    // 是否同时包含过滤项
+    boolean withFilters;
+
+    public static SearchKey of(RequestParams params, boolean withFilters) {
+        return new SearchKey(
+            normalizeKey(params.getKey()),
+            params.getPage(),
+            params.getSize(),
+            normalize(params.getSortBy()),
+            normalize(params.getBrand()),
+            normalize(params.getCity()),
+            normalize(params.getStarName()),
+            params.getMinPrice(),
+            params.getMaxPrice(),
+            normalize(params.getCursor()),
+            normalize(params.getLocation()),
+            HotelView.of(params.getView()),
+            normalize(params.getTotalHits()),
+            withFilters
+        );
+    }
+
+    /**
+     * 只查询过滤项时，分页、排序、坐标、投影和总数统计方式不影响结果
+     */
+    public static SearchKey forFilters(RequestParams params) {
+        return new SearchKey(
+            normalizeKey(params.getKey()),
+            null,
+            null,
+            null,
+            normalize(params.getBrand()),
+            normalize(params.getCity()),
+            normalize(params.getStarName()),
+            params.getMinPrice(),
+            params.getMaxPrice(),
+            null,
+            null,
+            null,
+            null,
+            true
+        );
+    }
+
+    /**
+     * 判断酒店在某个状态下是否可能出现在这个搜索的结果里。
+     * 关键字是全文检索，本地无法判断，一律视为可能匹配
+     */
+    public boolean mayMatch(HotelDoc hotel) {
+        if (city != null && !city.equals(hotel.getCity())) {
+            return false;
+        }
+        if (brand != null && !brand.equals(hotel.getBrand())) {
+            return false;
+        }
+        if (starName != null && !starName.equals(hotel.getStarName())) {
+            return false;
+        }
+        Integer price = hotel.getPrice();
+        if (minPrice != null && (price == null || price < minPrice)) {
+            return false;
+        }
+        return maxPrice == null || (price != null && price <= maxPrice);
+    }
+
+    private static String normalize(String value) {
+        return StringUtils.hasText(value) ? value.trim() : null;
+    }
+
+    private static String normalizeKey(String key) {
+        // 多个空白分词结果相同
+        return StringUtils.hasText(key) ? key.trim().replaceAll("\\s+", " ") : null;
+    }
+}
@@ -0,0 +1,181 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.config.SearchCacheProperties;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.PageResult;
+import cn.itcast.hotel.pojo.RequestParams;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * /hotel/list 和 /hotel/search 的搜索结果缓存。
+ * 按估算的内存大小淘汰；酒店变更时只清理过滤条件可能匹配到变更前或变更后酒店的条目。
+ * 命中、未命中、淘汰等指标以 cache.* (cache=hotelSearch) 的名字注册到 MeterRegistry。
+ * 缓存在每个实例本地，清理只发生在处理这条变更消息的实例上：多个实例消费同一个队列时，
+ * 其他实例的缓存不会被清理，最多返回ttl之前的结果，要求更及时时调小ttl
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    private final SearchCacheProperties properties;
+    private final Cache<SearchKey, PageResult> cache;
+    // 每次清理都加1，用于丢弃清理前就已发出的搜索的结果
+    private final AtomicLong generation = new AtomicLong();
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "search-cache-invalidator"));
+
+    public SearchResultCache(SearchCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(properties.getMaxWeight())
+            .weigher((SearchKey key, PageResult value) -> weigh(value))
+            .expireAfterWrite(properties.getTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "hotelSearch");
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isEnabled() {
+        return properties.isEnabled();
+    }
+
+    /**
+     * 先查缓存，未命中时调用loader搜索并放入缓存。
+     * 带坐标的搜索每个用户都不一样，不缓存
+     * @param withFilters 结果中是否包含过滤项
+     */
+    public PageResult get(RequestParams params, boolean withFilters, Function<RequestParams, PageResult> loader) {
+        if (!isEnabled() || !StringUtils.isEmpty(params.getLocation())) {
+            return loader.apply(params);
+        }
+        SearchKey key = SearchKey.of(params, withFilters);
+        PageResult result = cache.getIfPresent(key);
+        if (result != null) {
+            return result;
+        }
+        long gen = generation.get();
+        result = loader.apply(params);
+        // 搜索期间发生过清理，结果可能是旧的，不放入缓存
+        if (generation.get() == gen) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * get的异步版本，loader返回的future完成后放入缓存。
+     * 直接返回loader的future，调用方超时取消时可以一直传递到ES请求
+     */
+    public CompletableFuture<PageResult> getAsync(RequestParams params, boolean withFilters,
+                                                  Function<RequestParams, CompletableFuture<PageResult>> loader) {
+        if (!isEnabled() || !StringUtils.isEmpty(params.getLocation())) {
+            return loader.apply(params);
+        }
+        SearchKey key = SearchKey.of(params, withFilters);
+        PageResult cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        long gen = generation.get();
+        CompletableFuture<PageResult> future = loader.apply(params);
+        future.thenAccept(result -> {
+            if (generation.get() == gen) {
+                cache.put(key, result);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 清理可能受酒店变更影响的缓存
+     * @param states 变更前后的酒店，只用到city、brand、starName、price
+     */
+    public void invalidate(Collection<HotelDoc> states) {
+        if (!isEnabled() || states.isEmpty()) {
+            return;
+        }
+        List<HotelDoc> snapshot = new ArrayList<>(states);
+        removeMatching(snapshot);
+        // 变更要等索引刷新后才能被搜到，刷新前缓存的仍是旧结果，所以刷新后再清理一次
+        scheduler.schedule(() -> removeMatching(snapshot),
+            properties.getRefreshDelay().toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void removeMatching(List<HotelDoc> states) {
+        generation.incrementAndGet();
+        int removed = 0;
+        for (SearchKey key : cache.asMap().keySet()) {
+            for (HotelDoc state : states) {
+                if (key.mayMatch(state)) {
+                    cache.invalidate(key);
+                    removed++;
+                    break;
+                }
+            }
+        }
+        log.debug("{}个酒店变更，清理搜索缓存{}条", states.size(), removed);
+    }
+
+    // 粗略估算结果占用的字节数，字符串按每个字符2字节计算
+    private static int weigh(PageResult result) {
+        int weight = 64;
+        if (result.getFilters() != null) {
+            for (List<String> options : result.getFilters().values()) {
+                for (String option : options) {
+                    weight += length(option);
+                }
+            }
+        }
+        return weight + weigh(result.getHotels());
+    }
+
+    static int weigh(List<HotelDoc> hotels) {
+        int weight = 0;
+        if (hotels == null) {
+            return weight;
+        }
+        for (HotelDoc hotel : hotels) {
+            weight += 128;
+            weight += length(hotel.getName()) + length(hotel.getAddress()) + length(hotel.getBrand())
+                + length(hotel.getCity()) + length(hotel.getStarName()) + length(hotel.getBusiness())
+                + length(hotel.getLocation()) + length(hotel.getPic());
+            if (hotel.getSuggestion() != null) {
+                for (String suggestion : hotel.getSuggestion()) {
+                    weight += length(suggestion);
+                }
+            }
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : 40 + value.length() * 2;
+    }
+
+}
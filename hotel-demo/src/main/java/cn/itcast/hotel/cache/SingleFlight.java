@@ -0,0 +1,143 @@
+package cn.itcast.hotel.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * 合并相同的并发请求：同一个key同时只有一个请求真正发往ES，其余请求等待并共享它的结果。
+ * 每个等待者拿到的是各自的future，取消不会影响其他等待者；全部等待者都取消后才取消真正的请求。
+ * 指标 hotel.search.backend 为实际发出的请求数，hotel.search.coalesced 为被合并掉的请求数
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, Call<V>> calls = new ConcurrentHashMap<>();
+    private final Counter backend;
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.backend = Counter.builder("hotel.search.backend")
+            .description("实际发往ES的请求数").tag("type", name).register(meterRegistry);
+        this.coalesced = Counter.builder("hotel.search.coalesced")
+            .description("被合并的相同请求数").tag("type", name).register(meterRegistry);
+    }
+
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> loader) {
+        while (true) {
+            Call<V> call = new Call<>();
+            Call<V> existing = calls.putIfAbsent(key, call);
+            if (existing != null) {
+                CompletableFuture<V> joined = existing.join();
+                if (joined != null) {
+                    coalesced.increment();
+                    return joined;
+                }
+                // 已有的请求刚被全部取消，换成新的请求
+                if (!calls.replace(key, existing, call)) {
+                    continue;
+                }
+            }
+            CompletableFuture<V> result = call.join();
+            backend.increment();
+            start(key, call, loader);
+            return result;
+        }
+    }
+
+    /**
+     * 同步版本，由第一个到达的线程执行loader
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> future = executeAsync(key, () -> {
+            try {
+                return CompletableFuture.completedFuture(loader.get());
+            } catch (RuntimeException e) {
+                CompletableFuture<V> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        });
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void start(K key, Call<V> call, Supplier<CompletableFuture<V>> loader) {
+        CompletableFuture<V> underlying;
+        try {
+            underlying = loader.get();
+        } catch (RuntimeException e) {
+            calls.remove(key, call);
+            call.shared.completeExceptionally(e);
+            return;
+        }
+        // 全部等待者都取消时，取消真正的请求
+        call.shared.whenComplete((value, e) -> {
+            if (call.shared.isCancelled()) {
+                underlying.cancel(false);
+            }
+        });
+        underlying.whenComplete((value, e) -> {
+            // 先移除，之后到达的相同请求会重新查询，拿到的不会是旧结果
+            calls.remove(key, call);
+            if (e == null) {
+                call.shared.complete(value);
+            } else {
+                call.shared.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                    ? e.getCause() : e);
+            }
+        });
+    }
+
+    private static class Call<V> {
+        private final CompletableFuture<V> shared = new CompletableFuture<>();
+        private int waiters;
+        private boolean closed;
+
+        /**
+         * 加入这个请求，返回只属于当前等待者的future；请求已被取消时返回null
+         */
+        synchronized CompletableFuture<V> join() {
+            if (closed) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> mine = new CompletableFuture<>();
+            shared.whenComplete((value, e) -> {
+                if (e == null) {
+                    mine.complete(value);
+                } else {
+                    mine.completeExceptionally(e);
+                }
+            });
+            mine.whenComplete((value, e) -> {
+                if (mine.isCancelled()) {
+                    leave();
+                }
+            });
+            return mine;
+        }
+
+        private synchronized void leave() {
+            if (--waiters == 0 && !shared.isDone()) {
+                closed = true;
+                shared.cancel(false);
+            }
+        }
+    }
+
+}
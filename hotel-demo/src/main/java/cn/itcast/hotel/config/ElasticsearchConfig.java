@@ -0,0 +1,35 @@
+package cn.itcast.hotel.config;
+
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.elasticsearch.client.RestClientBuilder;
+import org.springframework.boot.autoconfigure.elasticsearch.RestClientBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Configuration
+public class ElasticsearchConfig {
+
+    /**
+     * 异步搜索不占用线程，但每个在途请求都占用一个连接，默认的连接池太小
+     */
+    @Bean
+    public RestClientBuilderCustomizer restClientBuilderCustomizer(SearchProperties properties) {
+        return new RestClientBuilderCustomizer() {
+            @Override
+            public void customize(RestClientBuilder builder) {
+            }
+
+            @Override
+            public void customize(HttpAsyncClientBuilder builder) {
+                builder.setMaxConnTotal(properties.getMaxConnections())
+                    .setMaxConnPerRoute(properties.getMaxConnections());
+            }
+        };
+    }
+
+}
@@ -0,0 +1,33 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 索引定义相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.index")
+public class IndexProperties {
+    // 使用的索引定义：baseline为最初的mapping，tuned为按查询方式调整过的
+    private String profile = "tuned";
+    // 主分片数，酒店数据量小，一个分片聚合时不需要合并多个分片的结果；routing为city时要调大，否则路由没有意义
+    private int shards = 1;
+    // 路由方式：none按_id路由；city按city路由，带city的搜索只查一个分片，只对tuned生效，切换时需要重建索引。
+    // 依赖shards大于1，city按哈希分到各个分片上，分片越多每次搜索跳过的分片越多
+    private String routing = "none";
+    // 多久重新读取一次别名指向的索引是否按city路由，其他实例重建索引切换别名后据此生效
+    private Duration routingRefreshInterval = Duration.ofSeconds(30);
+    // 记住最近写入的文档所在的路由多久，索引刷新之前搜索不到它们，应大于refresh_interval
+    private Duration routingRecentTtl = Duration.ofSeconds(30);
+    // 启动时是否按索引定义自动迁移
+    private boolean migrateOnStartup = false;
+}
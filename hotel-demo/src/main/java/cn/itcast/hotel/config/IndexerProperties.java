@@ -0,0 +1,46 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 批量索引相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.indexer")
+public class IndexerProperties {
+    // 一条lane攒够多少条消息就立即发送一次Bulk请求，不再等待合并窗口
+    private int batchSize = 500;
+    // 多久检查一次等满合并窗口的变更，一条消息最多等待coalesceWindow + flushInterval才会被发送
+    private Duration flushInterval = Duration.ofMillis(200);
+    // 每个消费者未确认消息的上限，需要大于batchSize，否则攒不满一批
+    private int prefetch = 1000;
+    // 同一个酒店的变更至少等待多久再发送，窗口内的多次变更合并成最后一次
+    private Duration coalesceWindow = Duration.ofSeconds(1);
+    // 文档内容与本进程上次写入的相同时跳过写入。只在只有一个实例消费同步队列时安全：
+    // 多个实例时A->B->A的B可能由其他实例写入，本实例会把最后的A当作没有变化跳过，索引停留在B。
+    // 关闭时不带版本号的写入交给ES的detect_noop判断
+    private boolean skipUnchanged = false;
+    // 每个队列的并发消费者数
+    private int consumers = 4;
+    // 按酒店id分成多少条lane并行同步，0表示使用CPU核数
+    private int lanes = 0;
+    // 同步失败的变更写入本地暂存文件后ack，由后台线程重放；关闭时仍然nack重新入队
+    private boolean spoolEnabled = true;
+    private String spoolPath = "data/hotel-index.spool";
+    // 暂存文件大小，每条变更占24字节，写满后退回nack
+    private long spoolSize = 64 * 1024 * 1024;
+    // 重放失败后的退避时间，从min开始每次翻倍，最长max
+    private Duration spoolRetryMin = Duration.ofSeconds(1);
+    private Duration spoolRetryMax = Duration.ofMinutes(1);
+    // 单个变更重放这么多次仍然失败就丢弃
+    private int spoolMaxAttempts = 20;
+}
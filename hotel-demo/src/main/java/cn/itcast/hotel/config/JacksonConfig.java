@@ -0,0 +1,32 @@
+package cn.itcast.hotel.config;
+
+import cn.itcast.hotel.pojo.HotelDoc;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 响应的JSON格式
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Configuration
+public class JacksonConfig {
+
+    /**
+     * 按view投影时未返回的字段在HotelDoc中为null，响应中不输出。
+     * 只加在MVC的ObjectMapper上，写入索引时null要写出，见HotelDoc.toSource
+     */
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer hotelViewCustomizer() {
+        return builder -> builder.mixIn(HotelDoc.class, HotelDocView.class);
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private interface HotelDocView {
+    }
+
+}
@@ -1,13 +1,23 @@
 package cn.itcast.hotel.config;
 
 import cn.itcast.hotel.constant.MQConstants;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.AmqpAdmin;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.Properties;
+
 /**
  * @author kaede
  * @create 2023-02-06
@@ -45,4 +55,45 @@ public class MQConfig {
             .with(MQConstants.HOTEL_DELETE_KEY);
     }
 
+    /**
+     * 索引消息的监听容器，手动ack，由HotelIndexer在Bulk成功后确认。
+     * 多个消费者并发接收，HotelIndexer再按酒店id分到各条lane，同一个酒店的变更不会被并行处理
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory indexerContainerFactory(
+        SimpleRabbitListenerContainerFactoryConfigurer configurer,
+        ConnectionFactory connectionFactory,
+        IndexerProperties properties) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+        factory.setPrefetchCount(properties.getPrefetch());
+        factory.setConcurrentConsumers(properties.getConsumers());
+        factory.setMaxConcurrentConsumers(properties.getConsumers());
+        return factory;
+    }
+
+    /**
+     * 索引队列中积压的消息数，抓取指标时才查询MQ，MQ不可用时为NaN
+     */
+    @Bean
+    public MeterBinder hotelQueueMetrics(AmqpAdmin amqpAdmin) {
+        return registry -> {
+            for (String queue : new String[]{MQConstants.HOTEL_INSERT_QUEUE, MQConstants.HOTEL_DELETE_QUEUE}) {
+                Gauge.builder("hotel.indexer.queue.depth", amqpAdmin, admin -> messageCount(admin, queue))
+                    .description("索引队列中积压的消息数").tag("queue", queue).register(registry);
+            }
+        };
+    }
+
+    private static double messageCount(AmqpAdmin amqpAdmin, String queue) {
+        try {
+            Properties properties = amqpAdmin.getQueueProperties(queue);
+            Object count = properties == null ? null : properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT);
+            return count instanceof Number ? ((Number) count).doubleValue() : Double.NaN;
+        } catch (RuntimeException e) {
+            return Double.NaN;
+        }
+    }
+
 }
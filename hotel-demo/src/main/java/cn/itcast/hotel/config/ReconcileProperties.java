@@ -0,0 +1,27 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 数据库与索引对账相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.reconcile")
+public class ReconcileProperties {
+    // 是否按cron定时对账，关闭后仍然可以通过 /index/reconcile 手动执行
+    private boolean enabled = true;
+    private String cron = "0 0 3 * * ?";
+    // 每个id区间的跨度，不一致时按_id取出整个区间逐行比对，留出重复文档的余量，不能超过ES的max_result_window的一半(5000)
+    private int rangeSize = 1000;
+    // 每次composite聚合返回的区间数
+    private int pageSize = 500;
+    // 每个Bulk请求同步的酒店数
+    private int batchSize = 500;
+}
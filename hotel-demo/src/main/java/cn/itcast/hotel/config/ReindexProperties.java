@@ -0,0 +1,28 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全量重建索引相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.reindex")
+public class ReindexProperties {
+    // 并行读取和写入的线程数，0表示使用CPU核数
+    private int parallelism = 0;
+    // 每个线程负责的id区间数，区间多一些各线程的负载更均衡
+    private int rangesPerThread = 4;
+    // 每次从数据库读取、每个Bulk请求包含的文档数
+    private int batchSize = 1000;
+    // 构建完成后恢复的副本数
+    private int replicas = 1;
+    // 切换别名后是否删除旧索引
+    private boolean deleteOldIndices = true;
+}
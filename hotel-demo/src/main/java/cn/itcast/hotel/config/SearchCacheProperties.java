@@ -0,0 +1,37 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 搜索结果缓存相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.search-cache")
+public class SearchCacheProperties {
+    private boolean enabled = true;
+    // 缓存占用内存的上限(估算值)，单位字节
+    private long maxWeight = 64 * 1024 * 1024;
+    // 兜底的过期时间，正常情况下缓存由酒店变更消息清理；
+    // 变更消息只清理消费它的实例，部署多个实例时其他实例的缓存最多落后这么久
+    private Duration ttl = Duration.ofMinutes(10);
+    // 索引刷新间隔，变更在刷新后才能被搜到，因此刷新后需要再清理一次
+    private Duration refreshDelay = Duration.ofMillis(1500);
+
+    // 是否按geohash格子缓存附近酒店的候选集
+    private boolean geoEnabled = true;
+    // geohash精度，6位的格子约为1.2km x 0.6km
+    private int geoPrecision = 6;
+    // 每个格子缓存的候选酒店数
+    private int geoCandidates = 200;
+    // 候选集缓存占用内存的上限(估算值)，单位字节
+    private long geoMaxWeight = 64 * 1024 * 1024;
+}
@@ -0,0 +1,37 @@
+package cn.itcast.hotel.config;
+
+import cn.itcast.hotel.constant.TotalHitsPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 搜索相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.search")
+public class SearchProperties {
+    // from+size分页允许的最大深度，更深的页必须使用cursor
+    private int maxOffsetWindow = 1000;
+    // 异步搜索同时在途的请求数上限，超过时直接拒绝
+    private int maxInFlight = 2000;
+    // 异步搜索的超时时间
+    private Duration asyncTimeout = Duration.ofSeconds(3);
+    // 解析搜索结果的线程数，0表示使用CPU核数
+    private int asyncThreads = 0;
+    // ES客户端的最大连接数，默认的10个连接撑不住大量并发的异步请求
+    private int maxConnections = 200;
+    // 是否合并相同的并发搜索请求
+    private boolean coalesceEnabled = true;
+    // 请求未指定时总数的统计方式
+    private TotalHitsPolicy totalHits = TotalHitsPolicy.CAPPED;
+    // capped方式的计数上限，与maxOffsetWindow一致时不影响from+size翻页
+    private int totalHitsCap = 1000;
+}
@@ -0,0 +1,28 @@
+package cn.itcast.hotel.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 自动补全相关配置
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "hotel.suggestion")
+public class SuggestionProperties {
+    // 是否使用本地的补全索引，关闭或尚未加载完成时使用ES的completion suggester
+    private boolean localEnabled = true;
+    // 返回的补全词条数
+    private int size = 10;
+    // 启动时从数据库分批加载酒店的批大小
+    private int loadBatchSize = 1000;
+    // 酒店变更后延迟多久重建补全索引，期间的变更合并为一次重建，也是补全结果最多落后的时间
+    private Duration rebuildDelay = Duration.ofSeconds(1);
+}
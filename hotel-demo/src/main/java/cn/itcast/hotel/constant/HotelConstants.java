@@ -7,54 +7,10 @@ package cn.itcast.hotel.constant;
 
 public class HotelConstants {
 
-    public static final String MAPPING_TEMPLATE = "{\n" +
-        "  \"mappings\": {\n" +
-        "    \"properties\": {\n" +
-        "      \"id\": {\n" +
-        "        \"type\": \"keyword\"\n" +
-        "      },\n" +
-        "      \"name\": {\n" +
-        "        \"type\": \"text\",\n" +
-        "        \"analyzer\": \"ik_max_word\",\n" +
-        "        \"copy_to\": \"all\"\n" +
-        "      },\n" +
-        "      \"address\": {\n" +
-        "        \"type\": \"keyword\",\n" +
-        "        \"index\": false\n" +
-        "      },\n" +
-        "      \"price\": {\n" +
-        "        \"type\": \"integer\"\n" +
-        "      },\n" +
-        "      \"score\": {\n" +
-        "        \"type\": \"integer\"\n" +
-        "      },\n" +
-        "      \"brand\": {\n" +
-        "        \"type\": \"keyword\",\n" +
-        "        \"copy_to\": \"all\"\n" +
-        "      },\n" +
-        "      \"city\": {\n" +
-        "        \"type\": \"keyword\"\n" +
-        "      },\n" +
-        "      \"starName\": {\n" +
-        "        \"type\": \"keyword\"\n" +
-        "      },\n" +
-        "      \"business\": {\n" +
-        "        \"type\": \"keyword\",\n" +
-        "        \"copy_to\": \"all\"\n" +
-        "      },\n" +
-        "      \"location\": {\n" +
-        "        \"type\": \"geo_point\"\n" +
-        "      },\n" +
-        "      \"pic\": {\n" +
-        "        \"type\": \"keyword\",\n" +
-        "        \"index\": false\n" +
-        "      },\n" +
-        "      \"all\": {\n" +
-        "        \"type\": \"text\",\n" +
-        "        \"analyzer\": \"ik_max_word\"\n" +
-        "      }\n" +
-        "    }\n" +
-        "  }\n" +
-        "}";
+    // 搜索和写入都使用的索引名，重建索引后它是指向最新版本索引的别名
+    public static final String HOTEL_INDEX = "hotel";
+    // 重建索引时新版本索引名的前缀
+    public static final String HOTEL_INDEX_PREFIX = "hotel_v";
+    // 索引的mapping和settings见HotelIndexDefinitions
 
 }
@@ -0,0 +1,54 @@
+package cn.itcast.hotel.constant;
+
+import org.springframework.util.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * 搜索结果的字段投影，决定ES返回哪些_source字段。
+ * 没有投影到的字段在HotelDoc中为null，不会输出到响应中
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public enum HotelView {
+    // 列表页卡片展示的字段，location用于地图标记和计算距离
+    LIST(new String[]{"id", "name", "address", "price", "score", "brand", "starName", "business", "pic", "isAD",
+        "location"}, null),
+    // 地图标记只需要坐标、名称和价格
+    MAP(new String[]{"id", "name", "location", "price"}, null),
+    // 详情，suggestion只用于自动补全、checksum只用于对账，不返回
+    DETAIL(null, new String[]{"suggestion", "checksum"});
+
+    private final String[] includes;
+    private final String[] excludes;
+
+    HotelView(String[] includes, String[] excludes) {
+        this.includes = includes;
+        this.excludes = excludes;
+    }
+
+    public String[] getIncludes() {
+        return includes;
+    }
+
+    public String[] getExcludes() {
+        return excludes;
+    }
+
+    /**
+     * 按名称查找，为空时返回DETAIL
+     * @throws IllegalArgumentException 名称不存在
+     */
+    public static HotelView of(String name) {
+        if (!StringUtils.hasText(name)) {
+            return DETAIL;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的view：" + name);
+        }
+    }
+}
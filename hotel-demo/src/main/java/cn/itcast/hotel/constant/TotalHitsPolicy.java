@@ -0,0 +1,37 @@
+package cn.itcast.hotel.constant;
+
+import org.springframework.util.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * 搜索结果总数的统计方式。
+ * 精确计数要求每个分片遍历全部匹配的文档，有上限或不计数时ES可以跳过排不进前几页的文档
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public enum TotalHitsPolicy {
+    // 精确计数
+    EXACT,
+    // 最多数到上限，超过上限时total为上限，totalApprox为true表示"至少"
+    CAPPED,
+    // 不计数，total为空，hasMore表示是否还有下一页
+    NONE;
+
+    /**
+     * 按名称查找，为空时返回默认值
+     * @throws IllegalArgumentException 名称不存在
+     */
+    public static TotalHitsPolicy of(String name, TotalHitsPolicy defaultPolicy) {
+        if (!StringUtils.hasText(name)) {
+            return defaultPolicy;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的totalHits：" + name);
+        }
+    }
+}
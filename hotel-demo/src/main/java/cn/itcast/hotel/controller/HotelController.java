@@ -1,12 +1,22 @@
 package cn.itcast.hotel.controller;
 
+import cn.itcast.hotel.config.SearchProperties;
 import cn.itcast.hotel.pojo.PageResult;
 import cn.itcast.hotel.pojo.RequestParams;
 import cn.itcast.hotel.service.IHotelService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * @author kaede
@@ -18,24 +28,69 @@ import java.util.Map;
 public class HotelController {
 
     private final IHotelService hotelService;
+    private final SearchProperties searchProperties;
 
-    public HotelController(IHotelService hotelService) {
+    public HotelController(IHotelService hotelService, SearchProperties searchProperties) {
         this.hotelService = hotelService;
+        this.searchProperties = searchProperties;
     }
 
     @PostMapping("/list")
-    public PageResult search(@RequestBody RequestParams params) {
-        return hotelService.search(params);
+    public DeferredResult<PageResult> search(@RequestBody RequestParams params) {
+        return toDeferredResult(hotelService.searchAsync(params));
+    }
+
+    /**
+     * 直通模式：/hotel/list?stream=true，ES的响应直接改写后写出，不构建中间对象，适合大分页的API调用方
+     */
+    @PostMapping(value = "/list", params = "stream=true")
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> searchStream(@RequestBody RequestParams params) {
+        return toDeferredResult(hotelService.searchRawAsync(params)
+            .thenApply(writer -> ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON)
+                .body((StreamingResponseBody) writer::writeTo)));
     }
 
     @PostMapping("/filters")
-    public Map<String, List<String>> getFilters(@RequestBody RequestParams params) {
-        return hotelService.filters(params);
+    public DeferredResult<Map<String, List<String>>> getFilters(@RequestBody RequestParams params) {
+        return toDeferredResult(hotelService.filtersAsync(params));
+    }
+
+    @PostMapping("/search")
+    public DeferredResult<PageResult> searchWithFilters(@RequestBody RequestParams params) {
+        return toDeferredResult(hotelService.searchWithFiltersAsync(params));
     }
 
     @GetMapping("/suggestion")
-    public List<String> getSuggestions(String key) {
-        return hotelService.getSuggestions(key);
+    public DeferredResult<List<String>> getSuggestions(String key) {
+        return toDeferredResult(hotelService.getSuggestionsAsync(key));
+    }
+
+    // 异步返回结果，等待ES时释放servlet线程；超时后取消ES请求
+    private <T> DeferredResult<T> toDeferredResult(CompletableFuture<T> future) {
+        DeferredResult<T> result = new DeferredResult<>(searchProperties.getAsyncTimeout().toMillis());
+        result.onTimeout(() -> {
+            future.cancel(false);
+            result.setErrorResult(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "搜索超时"));
+        });
+        future.whenComplete((value, e) -> {
+            if (e == null) {
+                result.setResult(value);
+            } else {
+                result.setErrorResult(translate(e));
+            }
+        });
+        return result;
+    }
+
+    private Throwable translate(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof RejectedExecutionException) {
+            return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, cause.getMessage(), cause);
+        }
+        if (cause instanceof IllegalArgumentException) {
+            return new ResponseStatusException(HttpStatus.BAD_REQUEST, cause.getMessage(), cause);
+        }
+        return cause;
     }
 
 }
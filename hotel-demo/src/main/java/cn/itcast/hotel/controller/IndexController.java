@@ -0,0 +1,59 @@
+package cn.itcast.hotel.controller;
+
+import cn.itcast.hotel.index.HotelReconcileJob;
+import cn.itcast.hotel.index.HotelReindexJob;
+import cn.itcast.hotel.index.IndexMigrator;
+import cn.itcast.hotel.pojo.MigrationPlan;
+import cn.itcast.hotel.pojo.ReconcileResult;
+import cn.itcast.hotel.pojo.ReindexResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * 索引维护相关接口
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@RestController
+@RequestMapping("/index")
+public class IndexController {
+
+    private final HotelReindexJob hotelReindexJob;
+    private final HotelReconcileJob hotelReconcileJob;
+    private final IndexMigrator indexMigrator;
+
+    public IndexController(HotelReindexJob hotelReindexJob, HotelReconcileJob hotelReconcileJob,
+                           IndexMigrator indexMigrator) {
+        this.hotelReindexJob = hotelReindexJob;
+        this.hotelReconcileJob = hotelReconcileJob;
+        this.indexMigrator = indexMigrator;
+    }
+
+    @PostMapping("/reindex")
+    public ReindexResult reindex() {
+        return hotelReindexJob.run();
+    }
+
+    @PostMapping("/reconcile")
+    public ReconcileResult reconcile() {
+        return hotelReconcileJob.run();
+    }
+
+    /**
+     * 查看当前索引与代码中的索引定义的差异
+     */
+    @GetMapping("/migration")
+    public MigrationPlan migration() {
+        return indexMigrator.plan();
+    }
+
+    @PostMapping("/migrate")
+    public MigrationPlan migrate() {
+        return indexMigrator.migrate();
+    }
+
+}
@@ -0,0 +1,158 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.IndexProperties;
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.pojo.HotelDoc;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.ElasticsearchStatusException;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按city自定义路由。
+ * 同城的酒店写到同一个分片，带city过滤的搜索和过滤项只查这一个分片，不带city的搜索仍然查询所有分片。
+ * 是否路由是索引的属性，写在创建时的_meta.routing中，开启或关闭都要通过重建索引迁移：
+ * 1.写入按每个目标索引自己的路由方式，重建期间旧索引和新索引可以不同
+ * 2.搜索只在别名指向的索引按city路由时才带上路由，别名切换之前一直查询所有分片
+ * 3.酒店换了城市时，按旧city写入的文档在别的分片上，要按旧的路由删掉，
+ *   旧的路由从索引中搜索得到，刷新之前搜索不到的最近写入的文档记在内存中
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class CityRouting {
+
+    public static final String FIELD = "city";
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final IndexProperties properties;
+    // 最近写入路由索引的文档，只保留过滤条件用到的字段
+    private final Cache<Long, HotelDoc> recent;
+    private final ScheduledExecutorService scheduler =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "city-routing-refresher"));
+
+    // 别名指向的索引是否按city路由，为null表示还没有读到
+    private volatile Boolean aliasRouted;
+    // 正在构建的新索引及其是否按city路由
+    private volatile String building;
+    private volatile boolean buildingRouted;
+
+    public CityRouting(RestHighLevelClient restHighLevelClient, IndexProperties properties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.properties = properties;
+        this.recent = Caffeine.newBuilder()
+            .expireAfterWrite(properties.getRoutingRecentTtl())
+            .build();
+    }
+
+    @PostConstruct
+    public void start() {
+        long interval = properties.getRoutingRefreshInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (Exception e) {
+                log.warn("读取索引的路由方式失败", e);
+            }
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 重新读取别名指向的索引是否按city路由
+     */
+    public void refresh() {
+        try {
+            Map<String, MappingMetaData> mappings = restHighLevelClient.indices()
+                .getMapping(new GetMappingsRequest().indices(HotelConstants.HOTEL_INDEX), RequestOptions.DEFAULT)
+                .mappings();
+            boolean routed = !mappings.isEmpty();
+            for (MappingMetaData mapping : mappings.values()) {
+                routed &= FIELD.equals(IndexDefinition.metaRouting(mapping.sourceAsMap()));
+            }
+            if (!Boolean.valueOf(routed).equals(aliasRouted)) {
+                log.info("索引{}按city路由：{}", HotelConstants.HOTEL_INDEX, routed);
+            }
+            aliasRouted = routed;
+        } catch (ElasticsearchStatusException e) {
+            if (e.status() != RestStatus.NOT_FOUND) {
+                throw e;
+            }
+            // 还没有索引，第一次写入时自动创建的索引不路由
+            aliasRouted = false;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 搜索时使用的路由，别名指向的索引不按city路由或者没有city条件时为null，查询所有分片
+     */
+    public String searchRouting(String city) {
+        return Boolean.TRUE.equals(aliasRouted) && StringUtils.hasText(city) ? city : null;
+    }
+
+    /**
+     * 写入的目标索引是否按city路由，还没有读到别名的路由方式时先读取一次
+     */
+    public boolean isRouted(String index) {
+        if (index.equals(building)) {
+            return buildingRouted;
+        }
+        if (aliasRouted == null) {
+            refresh();
+        }
+        return aliasRouted;
+    }
+
+    /**
+     * 文档的路由，city为空的酒店按id路由
+     */
+    public static String routingOf(HotelDoc hotelDoc) {
+        return StringUtils.hasText(hotelDoc.getCity()) ? hotelDoc.getCity() : String.valueOf(hotelDoc.getId());
+    }
+
+    public HotelDoc recent(Long id) {
+        return recent.getIfPresent(id);
+    }
+
+    public void remember(HotelDoc state) {
+        recent.put(state.getId(), state);
+    }
+
+    public void forget(Long id) {
+        recent.invalidate(id);
+    }
+
+    public void startBuilding(String index, boolean routed) {
+        buildingRouted = routed;
+        building = index;
+    }
+
+    public void stopBuilding() {
+        building = null;
+    }
+
+}
@@ -0,0 +1,55 @@
+package cn.itcast.hotel.index;
+
+import com.carrotsearch.hppc.LongLongHashMap;
+import org.elasticsearch.common.hash.MurmurHash3;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 记录每个酒店最后一次写入索引的文档指纹(序列化后JSON的128位murmur3哈希取64位)，
+ * 内容没有变化的写入可以直接跳过(hotel.indexer.skip-unchanged，只在单个消费者时开启)。
+ * 用原始类型的long -> long哈希表，每个酒店只占十几个字节。
+ * 只在本进程内有效，重启后为空，重建索引切换别名后清空，此时退回ES的detect_noop判断
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Component
+public class DocFingerprints {
+
+    private final LongLongHashMap fingerprints = new LongLongHashMap();
+
+    public static long of(String source) {
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        return MurmurHash3.hash128(bytes, 0, bytes.length, 0, new MurmurHash3.Hash128()).h1;
+    }
+
+    /**
+     * 是否记录过这个酒店的指纹
+     */
+    public synchronized boolean contains(long id) {
+        return fingerprints.containsKey(id);
+    }
+
+    /**
+     * 索引中的文档是否已经是这个内容
+     */
+    public synchronized boolean matches(long id, long fingerprint) {
+        return fingerprints.containsKey(id) && fingerprints.get(id) == fingerprint;
+    }
+
+    public synchronized void put(long id, long fingerprint) {
+        fingerprints.put(id, fingerprint);
+    }
+
+    public synchronized void remove(long id) {
+        fingerprints.remove(id);
+    }
+
+    public synchronized void clear() {
+        fingerprints.clear();
+    }
+
+}
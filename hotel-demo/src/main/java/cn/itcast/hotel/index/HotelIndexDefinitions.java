@@ -0,0 +1,106 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.IndexProperties;
+import cn.itcast.hotel.config.ReindexProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * hotel索引的各个版本的定义，修改mapping或settings时新增一个版本，由IndexMigrator迁移
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelIndexDefinitions {
+
+    private final IndexProperties indexProperties;
+    private final ReindexProperties reindexProperties;
+
+    public HotelIndexDefinitions(IndexProperties indexProperties, ReindexProperties reindexProperties) {
+        this.indexProperties = indexProperties;
+        this.reindexProperties = reindexProperties;
+    }
+
+    @PostConstruct
+    public void checkRouting() {
+        if (CityRouting.FIELD.equals(indexProperties.getRouting()) && indexProperties.getShards() <= 1) {
+            log.warn("hotel.index.routing=city需要hotel.index.shards大于1，只有一个主分片时按city路由不会减少查询的分片");
+        }
+    }
+
+    /**
+     * 按hotel.index.profile选择当前使用的定义
+     */
+    public IndexDefinition current() {
+        switch (indexProperties.getProfile()) {
+            case "baseline":
+                return baseline();
+            case "tuned":
+                return tuned(indexProperties.getShards(), reindexProperties.getReplicas(),
+                    CityRouting.FIELD.equals(indexProperties.getRouting()));
+            default:
+                throw new IllegalArgumentException("不支持的索引定义：" + indexProperties.getProfile());
+        }
+    }
+
+    /**
+     * 版本1：最初手写的mapping，与原来的MAPPING_TEMPLATE逐个字段一致，settings全部使用默认值。
+     * 后来加的checksum、suggestion、isAD只在版本2中定义，使用版本1时由动态映射生成
+     */
+    public static IndexDefinition baseline() {
+        return IndexDefinition.builder(1)
+            .field("id", "keyword")
+            .field("name", "text", "analyzer", "ik_max_word", "copy_to", "all")
+            .field("address", "keyword", "index", false)
+            .field("price", "integer")
+            .field("score", "integer")
+            .field("brand", "keyword", "copy_to", "all")
+            .field("city", "keyword")
+            .field("starName", "keyword")
+            .field("business", "keyword", "copy_to", "all")
+            .field("location", "geo_point")
+            .field("pic", "keyword", "index", false)
+            .field("all", "text", "analyzer", "ik_max_word")
+            .build();
+    }
+
+    /**
+     * 版本2：按实际的查询方式调整
+     * 1.city、brand、starName每次搜索都要聚合出过滤项，刷新时就构建global ordinals，不在第一次聚合时才构建
+     * 2.按city、brand排序存储，同城同品牌的文档相邻，过滤和聚合时读取的数据更集中，doc_values压缩得更好
+     * 3.只存不查的字段(address、pic、score)不建索引也不存doc_values；只用来过滤的字段不存doc_values
+     * 4.id要用来排序，location要按距离排序，checksum要用来对账，保留doc_values
+     * 5.补上自动补全用的suggestion和广告置顶用的isAD，以前是动态映射的
+     * 6.cityRouting为true时按city路由，见CityRouting；只有一个主分片时所有city都在同一个分片上，路由不减少查询的分片
+     */
+    public static IndexDefinition tuned(int shards, int replicas, boolean cityRouting) {
+        return IndexDefinition.builder(2)
+            .routing(cityRouting ? CityRouting.FIELD : null)
+            .setting("index.number_of_shards", shards)
+            .setting("index.number_of_replicas", replicas)
+            .setting("index.sort.field", new String[]{"city", "brand"})
+            .setting("index.sort.order", new String[]{"asc", "asc"})
+            .field("id", "keyword")
+            .field("name", "text", "analyzer", "ik_max_word", "copy_to", "all")
+            .field("address", "keyword", "index", false, "doc_values", false)
+            .field("price", "integer", "doc_values", false)
+            .field("score", "integer", "index", false, "doc_values", false)
+            .field("brand", "keyword", "copy_to", "all", "eager_global_ordinals", true)
+            .field("city", "keyword", "eager_global_ordinals", true)
+            .field("starName", "keyword", "eager_global_ordinals", true)
+            .field("business", "keyword", "copy_to", "all", "index", false, "doc_values", false)
+            .field("location", "geo_point")
+            .field("pic", "keyword", "index", false, "doc_values", false)
+            .field("isAD", "boolean", "doc_values", false)
+            .field("suggestion", "completion")
+            .field("checksum", "long", "index", false)
+            .field("all", "text", "analyzer", "ik_max_word")
+            .build();
+    }
+
+}
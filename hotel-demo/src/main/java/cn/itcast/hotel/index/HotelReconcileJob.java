@@ -0,0 +1,239 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.ReconcileProperties;
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.mapper.HotelMapper;
+import cn.itcast.hotel.mq.HotelIndexer;
+import cn.itcast.hotel.pojo.HotelChange;
+import cn.itcast.hotel.pojo.HotelChecksum;
+import cn.itcast.hotel.pojo.ReconcileResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.script.Script;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregation;
+import org.elasticsearch.search.aggregations.bucket.composite.CompositeAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.composite.HistogramValuesSourceBuilder;
+import org.elasticsearch.search.aggregations.metrics.Sum;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 数据库与索引对账，只修复不一致的部分：
+ * 1.按 id DIV rangeSize 把酒店分成区间，MySQL用GROUP BY、ES用composite聚合分别算出每个区间的文档数和校验和之和
+ * 2.两边不一致的区间按_id取出区间内的文档逐行比对，
+ *   数据库里有而索引里没有、内容不同、或者数据库里已经删除的酒店才重新同步，
+ *   按city路由时换过城市的酒店可能在两个分片上各有一份，文档数会比数据库多，也重新同步
+ * 校验和是同一行数据的CRC32，MySQL在查询里计算，ES在写入时存到checksum字段，两边只传输聚合结果，
+ * 一致的区间不会读取任何一行，开销与不一致的数量成正比
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelReconcileJob {
+
+    private static final String RANGES_AGG = "ranges";
+    private static final String CHECKSUM_AGG = "checksum";
+    private static final Script RANGE_SCRIPT = new Script("Long.parseLong(doc['id'].value)");
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final HotelMapper hotelMapper;
+    private final HotelIndexer hotelIndexer;
+    private final DocFingerprints docFingerprints;
+    private final HotelReindexJob hotelReindexJob;
+    private final ReconcileProperties properties;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public HotelReconcileJob(RestHighLevelClient restHighLevelClient, HotelMapper hotelMapper,
+                             HotelIndexer hotelIndexer, DocFingerprints docFingerprints,
+                             HotelReindexJob hotelReindexJob, ReconcileProperties properties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.hotelMapper = hotelMapper;
+        this.hotelIndexer = hotelIndexer;
+        this.docFingerprints = docFingerprints;
+        this.hotelReindexJob = hotelReindexJob;
+        this.properties = properties;
+    }
+
+    @Scheduled(cron = "${hotel.reconcile.cron:0 0 3 * * ?}")
+    public void scheduled() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        try {
+            run();
+        } catch (Exception e) {
+            log.error("定时对账失败", e);
+        }
+    }
+
+    public ReconcileResult run() {
+        // 重建索引会整体替换索引，期间对账没有意义
+        if (hotelReindexJob.isRunning()) {
+            throw new IllegalStateException("重建索引任务正在执行");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("对账任务正在执行");
+        }
+        long start = System.currentTimeMillis();
+        try {
+            long rangeSize = properties.getRangeSize();
+            // 1.两边分别计算每个区间的校验和
+            Map<Long, HotelChecksum> db = new HashMap<>();
+            for (HotelChecksum checksum : hotelMapper.selectRangeChecksums(rangeSize)) {
+                db.put(checksum.getKey(), checksum);
+            }
+            Map<Long, HotelChecksum> es = indexedRangeChecksums(rangeSize);
+            // 2.找出不一致的区间
+            Set<Long> ranges = new TreeSet<>(db.keySet());
+            ranges.addAll(es.keySet());
+            List<Long> drifted = new ArrayList<>();
+            for (Long range : ranges) {
+                if (!Objects.equals(db.get(range), es.get(range))) {
+                    drifted.add(range);
+                }
+            }
+            // 3.逐个区间逐行比对并修复
+            long repaired = 0;
+            for (Long range : drifted) {
+                repaired += repairRange(range * rangeSize, (range + 1) * rangeSize);
+            }
+            long took = System.currentTimeMillis() - start;
+            log.info("对账完成，共{}个区间，不一致{}个，重新同步{}个酒店，耗时{}ms",
+                ranges.size(), drifted.size(), repaired, took);
+            return new ReconcileResult((long) ranges.size(), (long) drifted.size(), repaired, took);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    private Map<Long, HotelChecksum> indexedRangeChecksums(long rangeSize) throws IOException {
+        Map<Long, HotelChecksum> result = new HashMap<>();
+        Map<String, Object> after = null;
+        while (true) {
+            // id是keyword，用脚本转成数字再分区间
+            CompositeAggregationBuilder aggregation = AggregationBuilders.composite(RANGES_AGG,
+                Collections.singletonList(new HistogramValuesSourceBuilder(RANGES_AGG)
+                    .script(RANGE_SCRIPT).interval(rangeSize)))
+                .size(properties.getPageSize())
+                .subAggregation(AggregationBuilders.sum(CHECKSUM_AGG).field("checksum"));
+            if (after != null) {
+                aggregation.aggregateAfter(after);
+            }
+            SearchRequest request = new SearchRequest(HotelConstants.HOTEL_INDEX);
+            request.source().size(0).trackTotalHits(false).aggregation(aggregation);
+            SearchResponse response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
+            CompositeAggregation ranges = response.getAggregations().get(RANGES_AGG);
+            for (CompositeAggregation.Bucket bucket : ranges.getBuckets()) {
+                long key = (long) (((Number) bucket.getKey().get(RANGES_AGG)).doubleValue() / rangeSize);
+                Sum sum = bucket.getAggregations().get(CHECKSUM_AGG);
+                // 每个校验和小于2^32，区间内不超过2^21个文档时double的和是精确的
+                result.put(key, new HotelChecksum(key, bucket.getDocCount(), (long) sum.getValue()));
+            }
+            after = ranges.afterKey();
+            if (after == null || ranges.getBuckets().size() < properties.getPageSize()) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * 逐行比对 [fromId, toId) 区间，重新同步不一致的酒店
+     * @return 重新同步成功的酒店数
+     */
+    private long repairRange(long fromId, long toId) throws IOException {
+        // 1.数据库中每一行的校验和
+        Map<Long, Long> rows = new HashMap<>();
+        for (HotelChecksum row : hotelMapper.selectRowChecksums(fromId, toId)) {
+            rows.put(row.getKey(), row.getSum());
+        }
+        // 2.索引中的文档：区间内所有可能的id组成ids查询，只按_id查找这些文档，不扫描整个索引，
+        // 数据库中没有而索引中有的酒店也能查到。区间跨度不超过rangeSize，留出重复文档的余量，一次就能取完
+        String[] ids = new String[(int) (toId - fromId)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = String.valueOf(fromId + i);
+        }
+        SearchRequest request = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        request.source().query(QueryBuilders.idsQuery().addIds(ids))
+            .size(ids.length * 2)
+            .trackTotalHits(false)
+            .version(true)
+            .fetchSource("checksum", null);
+        SearchHit[] hits = restHighLevelClient.search(request, RequestOptions.DEFAULT).getHits().getHits();
+        Map<Long, SearchHit> docs = new HashMap<>(hits.length * 2);
+        Set<Long> duplicated = new HashSet<>();
+        for (SearchHit hit : hits) {
+            // 同一个酒店有多份时保留版本号最大的
+            SearchHit previous = docs.put(Long.valueOf(hit.getId()), hit);
+            if (previous != null) {
+                duplicated.add(Long.valueOf(hit.getId()));
+                if (previous.getVersion() > hit.getVersion()) {
+                    docs.put(Long.valueOf(hit.getId()), previous);
+                }
+            }
+        }
+        // 3.找出不一致的酒店，一律按数据库当前状态同步，数据库中没有的会被删除
+        // 版本号取索引中的版本加1，对账期间已经有更新的实时变更写入时，这次写入会被当作过时的忽略
+        List<HotelChange> changes = new ArrayList<>();
+        for (Map.Entry<Long, Long> row : rows.entrySet()) {
+            SearchHit hit = docs.get(row.getKey());
+            if (hit == null) {
+                changes.add(new HotelChange(row.getKey(), false, null));
+            } else {
+                Object checksum = hit.getSourceAsMap().get("checksum");
+                if (!(checksum instanceof Number) || ((Number) checksum).longValue() != row.getValue()
+                    || duplicated.contains(row.getKey())) {
+                    changes.add(new HotelChange(row.getKey(), false, hit.getVersion() + 1));
+                }
+            }
+        }
+        for (Map.Entry<Long, SearchHit> doc : docs.entrySet()) {
+            if (!rows.containsKey(doc.getKey())) {
+                changes.add(new HotelChange(doc.getKey(), false, doc.getValue().getVersion() + 1));
+            }
+        }
+        // 4.分批交给HotelIndexer中酒店id对应的lane同步，与同一个酒店的实时变更先后执行，
+        // 索引中没有的酒店写入时不带版本号，在lane里执行才不会用先读到的旧状态覆盖实时变更写入的新内容。
+        // 先清掉指纹，否则可能被当作内容没有变化而跳过
+        long repaired = 0;
+        int batchSize = properties.getBatchSize();
+        for (int i = 0; i < changes.size(); i += batchSize) {
+            List<HotelChange> batch = changes.subList(i, Math.min(changes.size(), i + batchSize));
+            for (HotelChange change : batch) {
+                docFingerprints.remove(change.getId());
+            }
+            Map<Long, String> failures = hotelIndexer.replay(batch);
+            for (Map.Entry<Long, String> failure : failures.entrySet()) {
+                log.warn("对账时酒店{}同步失败：{}", failure.getKey(), failure.getValue());
+            }
+            repaired += batch.size() - failures.size();
+        }
+        log.info("id区间[{}, {})数据库{}条、索引{}条，重新同步{}个酒店", fromId, toId, rows.size(), docs.size(),
+            changes.size());
+        return repaired;
+    }
+
+}
@@ -0,0 +1,282 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.ReindexProperties;
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.mapper.HotelMapper;
+import cn.itcast.hotel.mq.HotelIndexer;
+import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.HotelChange;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.ReindexResult;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.admin.indices.alias.IndicesAliasesRequest;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexRequest;
+import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.CreateIndexRequest;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.rest.RestStatus;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 全量重建索引：
+ * 1.按HotelIndexDefinitions.current()创建新版本索引，构建期间关闭副本和刷新
+ * 2.把tb_hotel按id切成多个区间，多线程按id游标分批读取，每批一个Bulk请求，内存占用与表大小无关
+ * 3.恢复副本和刷新后，原子地把hotel别名切到新索引，切换前搜索一直使用旧索引
+ * 导入用create，只能挡住增量同步先写入的文档，挡不住删除：增量同步删掉的酒店会被导入读到的旧数据重新创建；
+ * 新索引按city路由时，换了城市的酒店还可能在新旧两个city的分片上各有一份。
+ * 所以切换前把导入期间同步过的酒店按数据库当前状态重新同步一次
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelReindexJob {
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final HotelMapper hotelMapper;
+    private final IndexWriteTargets indexWriteTargets;
+    private final HotelIndexDefinitions hotelIndexDefinitions;
+    private final CityRouting cityRouting;
+    private final HotelIndexer hotelIndexer;
+    private final DocFingerprints docFingerprints;
+    private final ReindexProperties properties;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public HotelReindexJob(RestHighLevelClient restHighLevelClient, HotelMapper hotelMapper,
+                           IndexWriteTargets indexWriteTargets, HotelIndexDefinitions hotelIndexDefinitions,
+                           CityRouting cityRouting, HotelIndexer hotelIndexer, DocFingerprints docFingerprints,
+                           ReindexProperties properties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.hotelMapper = hotelMapper;
+        this.indexWriteTargets = indexWriteTargets;
+        this.hotelIndexDefinitions = hotelIndexDefinitions;
+        this.cityRouting = cityRouting;
+        this.hotelIndexer = hotelIndexer;
+        this.docFingerprints = docFingerprints;
+        this.properties = properties;
+    }
+
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    public ReindexResult run() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("重建索引任务正在执行");
+        }
+        long start = System.currentTimeMillis();
+        String index = HotelConstants.HOTEL_INDEX_PREFIX + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        IndexDefinition definition = hotelIndexDefinitions.current();
+        boolean routed = definition.getRouting() != null;
+        try {
+            // 1.创建新索引
+            createIndex(index, definition);
+            // 增量变更同时写入新索引
+            cityRouting.startBuilding(index, routed);
+            indexWriteTargets.startBuilding(index);
+            // 2.并行导入
+            long total = loadAll(index, routed);
+            // 3.恢复设置，重新同步导入期间变更过的酒店，再切换别名
+            restoreSettings(index);
+            resyncTouched();
+            swapAlias(index);
+            // 新索引的内容来自导入，不是本进程写入的
+            docFingerprints.clear();
+            cityRouting.refresh();
+            long took = System.currentTimeMillis() - start;
+            log.info("重建索引{}完成，共{}条，耗时{}ms", index, total, took);
+            return new ReindexResult(index, total, took);
+        } catch (Exception e) {
+            log.error("重建索引{}失败，继续使用旧索引", index, e);
+            deleteQuietly(index);
+            throw new RuntimeException(e);
+        } finally {
+            indexWriteTargets.stopBuilding();
+            cityRouting.stopBuilding();
+            running.set(false);
+        }
+    }
+
+    private void createIndex(String index, IndexDefinition definition) throws IOException {
+        CreateIndexRequest request = new CreateIndexRequest(index);
+        request.mapping(definition.mapping());
+        // 导入期间不需要副本和近实时刷新，完成后再恢复
+        request.settings(Settings.builder()
+            .put(definition.getSettings())
+            .put("index.number_of_replicas", 0)
+            .put("index.refresh_interval", "-1"));
+        restHighLevelClient.indices().create(request, RequestOptions.DEFAULT);
+    }
+
+    private long loadAll(String index, boolean routed) throws InterruptedException, ExecutionException {
+        Long minId = hotelMapper.selectMinId();
+        Long maxId = hotelMapper.selectMaxId();
+        if (minId == null || maxId == null) {
+            return 0;
+        }
+        int threads = properties.getParallelism() > 0
+            ? properties.getParallelism() : Runtime.getRuntime().availableProcessors();
+        int rangeCount = threads * Math.max(1, properties.getRangesPerThread());
+        long step = Math.max(1, (maxId - minId + rangeCount) / rangeCount);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // 区间为 (afterId, rangeEnd]
+            List<Future<Long>> futures = new ArrayList<>(rangeCount);
+            for (long afterId = minId - 1; afterId < maxId; afterId += step) {
+                long from = afterId;
+                long to = Math.min(maxId, afterId + step);
+                futures.add(executor.submit(() -> loadRange(index, routed, from, to)));
+            }
+            long total = 0;
+            for (Future<Long> future : futures) {
+                total += future.get();
+            }
+            return total;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long loadRange(String index, boolean routed, long afterId, long maxId) throws IOException {
+        int batchSize = properties.getBatchSize();
+        long count = 0;
+        while (true) {
+            List<Hotel> hotels = hotelMapper.selectAfterId(afterId, maxId, batchSize);
+            if (hotels.isEmpty()) {
+                return count;
+            }
+            BulkRequest request = new BulkRequest();
+            for (Hotel hotel : hotels) {
+                HotelDoc hotelDoc;
+                String source;
+                try {
+                    hotelDoc = new HotelDoc(hotel);
+                    source = hotelDoc.toSource();
+                } catch (RuntimeException | IOException e) {
+                    // 一行数据有问题时跳过它，不让整个重建失败，修好数据后由增量同步或对账补上
+                    log.error("酒店{}转换为文档失败，重建时跳过", hotel.getId(), e);
+                    continue;
+                }
+                // 用create而不是index，增量同步先写入的文档更新，不能被这里读到的旧数据覆盖，删除由resyncTouched处理
+                request.add(new IndexRequest(index).id(hotel.getId().toString())
+                    .routing(routed ? CityRouting.routingOf(hotelDoc) : null)
+                    .opType(DocWriteRequest.OpType.CREATE)
+                    .source(source, XContentType.JSON));
+            }
+            if (request.numberOfActions() > 0) {
+                checkFailures(restHighLevelClient.bulk(request, RequestOptions.DEFAULT));
+            }
+            count += request.numberOfActions();
+            if (hotels.size() < batchSize) {
+                return count;
+            }
+            afterId = hotels.get(hotels.size() - 1).getId();
+        }
+    }
+
+    private void checkFailures(BulkResponse response) {
+        if (!response.hasFailures()) {
+            return;
+        }
+        for (BulkItemResponse item : response.getItems()) {
+            // 版本冲突说明增量同步已经写入了更新的数据
+            if (item.isFailed() && item.getFailure().getStatus() != RestStatus.CONFLICT) {
+                throw new IllegalStateException("酒店" + item.getId() + "写入失败：" + item.getFailureMessage());
+            }
+        }
+    }
+
+    /**
+     * 导入已经结束、新索引也已经刷新，把导入期间同步过的酒店按数据库当前状态重新同步一次：
+     * 数据库中已经删除的会从新索引删掉，按city路由时不在当前路由上的文档也会被删掉。
+     * 交给HotelIndexer中酒店id对应的lane执行，与同一个酒店的实时变更先后执行，先读到的旧状态不会覆盖新的
+     */
+    void resyncTouched() {
+        List<HotelChange> changes = new ArrayList<>();
+        for (Long id : indexWriteTargets.drainTouched()) {
+            // 清掉指纹，否则内容没有变化时不会写入
+            docFingerprints.remove(id);
+            changes.add(new HotelChange(id, false, null));
+        }
+        int batchSize = properties.getBatchSize();
+        for (int i = 0; i < changes.size(); i += batchSize) {
+            List<HotelChange> batch = changes.subList(i, Math.min(changes.size(), i + batchSize));
+            Map<Long, String> failures = hotelIndexer.replay(batch);
+            if (!failures.isEmpty()) {
+                throw new IllegalStateException("重建期间变更过的酒店重新同步失败：" + failures);
+            }
+        }
+        if (!changes.isEmpty()) {
+            log.info("重建期间变更过的{}个酒店已重新同步", changes.size());
+        }
+    }
+
+    private void restoreSettings(String index) throws IOException {
+        UpdateSettingsRequest request = new UpdateSettingsRequest(index);
+        request.settings(Settings.builder()
+            .put("index.number_of_replicas", properties.getReplicas())
+            .putNull("index.refresh_interval"));
+        restHighLevelClient.indices().putSettings(request, RequestOptions.DEFAULT);
+        restHighLevelClient.indices().refresh(new RefreshRequest(index), RequestOptions.DEFAULT);
+    }
+
+    private void swapAlias(String index) throws IOException {
+        String alias = HotelConstants.HOTEL_INDEX;
+        Set<String> oldIndices = restHighLevelClient.indices()
+            .getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT).getAliases().keySet();
+        IndicesAliasesRequest request = new IndicesAliasesRequest();
+        request.addAliasAction(IndicesAliasesRequest.AliasActions.add().index(index).alias(alias));
+        for (String oldIndex : oldIndices) {
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.remove().index(oldIndex).alias(alias));
+        }
+        if (oldIndices.isEmpty()
+            && restHighLevelClient.indices().exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+            // 以前直接用hotel作为索引名，和别名冲突，只能在同一个原子操作里删掉
+            request.addAliasAction(IndicesAliasesRequest.AliasActions.removeIndex().index(alias));
+        }
+        restHighLevelClient.indices().updateAliases(request, RequestOptions.DEFAULT);
+
+        if (properties.isDeleteOldIndices()) {
+            for (String oldIndex : oldIndices) {
+                deleteQuietly(oldIndex);
+            }
+        }
+    }
+
+    private void deleteQuietly(String index) {
+        try {
+            restHighLevelClient.indices().delete(new DeleteIndexRequest(index), RequestOptions.DEFAULT);
+        } catch (Exception e) {
+            log.warn("删除索引{}失败", index, e);
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package cn.itcast.hotel.index;
+
+import org.elasticsearch.common.settings.Settings;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 用代码描述的索引定义：版本号、settings、路由字段和字段mapping。
+ * 版本号和路由字段写在mapping的_meta中，IndexMigrator据此判断索引是按哪个版本、哪种路由方式创建的
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public class IndexDefinition {
+
+    private final int version;
+    private final Settings settings;
+    private final String routing;
+    private final Map<String, Map<String, Object>> fields;
+
+    private IndexDefinition(int version, Settings settings, String routing, Map<String, Map<String, Object>> fields) {
+        this.version = version;
+        this.settings = settings;
+        this.routing = routing;
+        this.fields = Collections.unmodifiableMap(fields);
+    }
+
+    public static Builder builder(int version) {
+        return new Builder(version);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * 按哪个字段的值路由，为null时按_id路由
+     */
+    public String getRouting() {
+        return routing;
+    }
+
+    /**
+     * 字段名到字段定义(type及其他参数)
+     */
+    public Map<String, Map<String, Object>> getFields() {
+        return fields;
+    }
+
+    /**
+     * 创建索引时使用的完整mapping
+     */
+    public Map<String, Object> mapping() {
+        return mapping(fields);
+    }
+
+    /**
+     * 只包含部分字段的mapping，用于在已有索引上新增字段
+     */
+    public Map<String, Object> mapping(Map<String, Map<String, Object>> properties) {
+        Map<String, Object> meta = new LinkedHashMap<>();
+        meta.put("version", version);
+        Map<String, Object> mapping = new LinkedHashMap<>();
+        if (routing != null) {
+            meta.put("routing", routing);
+            // 没有带路由的写入会被拒绝，不会被写到按_id算出的分片上
+            mapping.put("_routing", Collections.singletonMap("required", true));
+        }
+        mapping.put("_meta", meta);
+        mapping.put("properties", properties);
+        return mapping;
+    }
+
+    /**
+     * 从索引的mapping中读出创建时的路由字段，没有时为null
+     */
+    public static String metaRouting(Map<String, Object> mapping) {
+        Object meta = mapping.get("_meta");
+        Object routing = meta instanceof Map ? ((Map<?, ?>) meta).get("routing") : null;
+        return routing == null ? null : String.valueOf(routing);
+    }
+
+    public static class Builder {
+        private final int version;
+        private final Settings.Builder settings = Settings.builder();
+        private String routing;
+        private final Map<String, Map<String, Object>> fields = new LinkedHashMap<>();
+
+        private Builder(int version) {
+            this.version = version;
+        }
+
+        /**
+         * @param key 完整的设置名，如index.number_of_shards
+         */
+        public Builder setting(String key, Object value) {
+            if (value instanceof String[]) {
+                settings.putList(key, (String[]) value);
+            } else {
+                settings.put(key, String.valueOf(value));
+            }
+            return this;
+        }
+
+        /**
+         * 按字段的值路由，值相同的文档写到同一个分片
+         */
+        public Builder routing(String field) {
+            this.routing = field;
+            return this;
+        }
+
+        /**
+         * @param params 依次为参数名和参数值
+         */
+        public Builder field(String name, String type, Object... params) {
+            if (params.length % 2 != 0) {
+                throw new IllegalArgumentException("字段" + name + "的参数必须成对出现");
+            }
+            Map<String, Object> field = new LinkedHashMap<>();
+            field.put("type", type);
+            for (int i = 0; i < params.length; i += 2) {
+                field.put((String) params[i], params[i + 1]);
+            }
+            fields.put(name, field);
+            return this;
+        }
+
+        public IndexDefinition build() {
+            return new IndexDefinition(version, settings.build(), routing, new LinkedHashMap<>(fields));
+        }
+    }
+
+}
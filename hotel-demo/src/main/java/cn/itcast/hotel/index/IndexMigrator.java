@@ -0,0 +1,277 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.IndexProperties;
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.pojo.MigrationPlan;
+import lombok.extern.slf4j.Slf4j;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
+import org.elasticsearch.action.admin.indices.settings.get.GetSettingsRequest;
+import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.indices.GetIndexRequest;
+import org.elasticsearch.client.indices.GetMappingsRequest;
+import org.elasticsearch.client.indices.PutMappingRequest;
+import org.elasticsearch.common.settings.Settings;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 把hotel索引迁移到HotelIndexDefinitions.current()的定义：
+ * 1.比较别名指向的索引的_meta.version、mapping和settings与目标定义的差异
+ * 2.只有新增字段、可动态修改的mapping参数和settings时，直接在原索引上修改
+ * 3.字段类型、索引方式、分片数、索引排序、路由方式等不能修改的差异，通过HotelReindexJob按新定义重建后切换别名
+ * 4.索引中有而定义中没有的字段不能删除，只在差异中列出，等下次重建时去掉
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class IndexMigrator {
+
+    // 可以在已有字段上直接修改的mapping参数
+    private static final Set<String> UPDATABLE_PARAMS =
+        new HashSet<>(Arrays.asList("eager_global_ordinals", "ignore_above", "search_analyzer"));
+    // 定义中没写时ES使用的默认值，索引中的值等于默认值时不算差异
+    private static final Map<String, String> DEFAULT_PARAMS = new HashMap<>();
+    static {
+        DEFAULT_PARAMS.put("index", "true");
+        DEFAULT_PARAMS.put("doc_values", "true");
+        DEFAULT_PARAMS.put("eager_global_ordinals", "false");
+        // completion字段返回的默认参数
+        DEFAULT_PARAMS.put("analyzer", "simple");
+        DEFAULT_PARAMS.put("search_analyzer", "simple");
+        DEFAULT_PARAMS.put("preserve_separators", "true");
+        DEFAULT_PARAMS.put("preserve_position_increments", "true");
+        DEFAULT_PARAMS.put("max_input_length", "50");
+    }
+    // 可以在已有索引上直接修改的settings
+    private static final Set<String> DYNAMIC_SETTINGS = new HashSet<>(Arrays.asList(
+        "index.number_of_replicas", "index.refresh_interval", "index.max_result_window"));
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final HotelIndexDefinitions hotelIndexDefinitions;
+    private final HotelReindexJob hotelReindexJob;
+    private final IndexProperties properties;
+
+    public IndexMigrator(RestHighLevelClient restHighLevelClient, HotelIndexDefinitions hotelIndexDefinitions,
+                         HotelReindexJob hotelReindexJob, IndexProperties properties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.hotelIndexDefinitions = hotelIndexDefinitions;
+        this.hotelReindexJob = hotelReindexJob;
+        this.properties = properties;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (!properties.isMigrateOnStartup()) {
+            return;
+        }
+        try {
+            migrate();
+        } catch (Exception e) {
+            log.error("启动时迁移索引失败，继续使用现有索引", e);
+        }
+    }
+
+    /**
+     * 只比较，不修改
+     */
+    public MigrationPlan plan() {
+        try {
+            return diff(hotelIndexDefinitions.current()).plan;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public MigrationPlan migrate() {
+        IndexDefinition target = hotelIndexDefinitions.current();
+        try {
+            Diff diff = diff(target);
+            MigrationPlan plan = diff.plan;
+            switch (plan.getAction()) {
+                case CREATE:
+                case REINDEX:
+                    hotelReindexJob.run();
+                    break;
+                case UPDATE:
+                    update(plan.getIndex(), target, diff);
+                    break;
+                default:
+                    break;
+            }
+            log.info("索引{}迁移到版本{}：{} {}", plan.getIndex(), plan.getTargetVersion(), plan.getAction(),
+                plan.getChanges());
+            return plan;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private Diff diff(IndexDefinition target) throws IOException {
+        // 1.找到别名指向的索引
+        String index = currentIndex();
+        if (index == null) {
+            Diff diff = new Diff();
+            diff.plan.setTargetVersion(target.getVersion());
+            diff.plan.setAction(MigrationPlan.Action.CREATE);
+            diff.plan.getChanges().add("索引不存在");
+            return diff;
+        }
+        Map<String, Object> mapping = restHighLevelClient.indices()
+            .getMapping(new GetMappingsRequest().indices(index), RequestOptions.DEFAULT)
+            .mappings().get(index).sourceAsMap();
+        Settings settings = restHighLevelClient.indices()
+            .getSettings(new GetSettingsRequest().indices(index), RequestOptions.DEFAULT)
+            .getIndexToSettings().get(index);
+        return compare(index, target, mapping, settings);
+    }
+
+    /**
+     * 比较已有索引的mapping、settings与目标定义
+     */
+    static Diff compare(String index, IndexDefinition target, Map<String, Object> mapping, Settings settings) {
+        Diff diff = new Diff();
+        MigrationPlan plan = diff.plan;
+        plan.setTargetVersion(target.getVersion());
+        plan.setIndex(index);
+        plan.setCurrentVersion(metaVersion(mapping));
+        if (plan.getCurrentVersion() > target.getVersion()) {
+            plan.getChanges().add("索引的版本比代码中的定义新，不迁移");
+            return diff;
+        }
+        boolean reindex = false;
+        boolean update = false;
+        // 2.路由方式决定文档在哪个分片，只能重建
+        String routing = IndexDefinition.metaRouting(mapping);
+        if (!Objects.equals(routing, target.getRouting())) {
+            reindex = true;
+            plan.getChanges().add(String.format("路由：%s -> %s，需要重建", routing, target.getRouting()));
+        }
+        // 3.比较字段
+        Map<String, Object> properties = asMap(mapping.get("properties"));
+        for (Map.Entry<String, Map<String, Object>> field : target.getFields().entrySet()) {
+            Map<String, Object> current = asMap(properties.get(field.getKey()));
+            if (current.isEmpty()) {
+                update = true;
+                diff.fields.put(field.getKey(), field.getValue());
+                plan.getChanges().add("新增字段" + field.getKey());
+                continue;
+            }
+            Set<String> params = new HashSet<>(field.getValue().keySet());
+            params.addAll(current.keySet());
+            for (String param : params) {
+                String expected = stringValue(field.getValue().get(param));
+                String actual = stringValue(current.get(param));
+                if (Objects.equals(expected, actual) || "fields".equals(param)
+                    || (expected == null && Objects.equals(actual, DEFAULT_PARAMS.get(param)))) {
+                    continue;
+                }
+                if (UPDATABLE_PARAMS.contains(param)) {
+                    update = true;
+                    diff.fields.put(field.getKey(), field.getValue());
+                    plan.getChanges().add(String.format("字段%s.%s：%s -> %s", field.getKey(), param, actual, expected));
+                } else {
+                    reindex = true;
+                    plan.getChanges().add(String.format("字段%s.%s：%s -> %s，需要重建", field.getKey(), param,
+                        actual, expected));
+                }
+            }
+        }
+        // 4.索引中有、定义中没有的字段，多是动态映射生成的，字段不能删除，只报告，下次重建时去掉
+        for (String field : properties.keySet()) {
+            if (!target.getFields().containsKey(field)) {
+                plan.getChanges().add(String.format("字段%s：定义中没有，重建后去掉", field));
+            }
+        }
+        // 5.比较settings，只比较定义中写明的
+        for (String key : target.getSettings().keySet()) {
+            List<String> expected = target.getSettings().getAsList(key);
+            List<String> actual = settings.getAsList(key);
+            if (expected.equals(actual)) {
+                continue;
+            }
+            if (DYNAMIC_SETTINGS.contains(key)) {
+                update = true;
+                diff.settings.putList(key, expected);
+                plan.getChanges().add(String.format("设置%s：%s -> %s", key, actual, expected));
+            } else {
+                reindex = true;
+                plan.getChanges().add(String.format("设置%s：%s -> %s，需要重建", key, actual, expected));
+            }
+        }
+        if (reindex) {
+            plan.setAction(MigrationPlan.Action.REINDEX);
+        } else if (update || plan.getCurrentVersion() != target.getVersion()) {
+            plan.setAction(MigrationPlan.Action.UPDATE);
+        }
+        return diff;
+    }
+
+    private void update(String index, IndexDefinition target, Diff diff) throws IOException {
+        // 字段为空时也要更新_meta.version
+        PutMappingRequest mappingRequest = new PutMappingRequest(index).source(target.mapping(diff.fields));
+        restHighLevelClient.indices().putMapping(mappingRequest, RequestOptions.DEFAULT);
+        Settings settings = diff.settings.build();
+        if (!settings.isEmpty()) {
+            restHighLevelClient.indices().putSettings(new UpdateSettingsRequest(index).settings(settings),
+                RequestOptions.DEFAULT);
+        }
+    }
+
+    private String currentIndex() throws IOException {
+        String alias = HotelConstants.HOTEL_INDEX;
+        Set<String> indices = restHighLevelClient.indices()
+            .getAlias(new GetAliasesRequest(alias), RequestOptions.DEFAULT).getAliases().keySet();
+        if (!indices.isEmpty()) {
+            return indices.iterator().next();
+        }
+        // 以前直接用hotel作为索引名
+        if (restHighLevelClient.indices().exists(new GetIndexRequest(alias), RequestOptions.DEFAULT)) {
+            return alias;
+        }
+        return null;
+    }
+
+    private static int metaVersion(Map<String, Object> mapping) {
+        Object version = asMap(mapping.get("_meta")).get("version");
+        return version instanceof Number ? ((Number) version).intValue() : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asMap(Object value) {
+        return value instanceof Map ? (Map<String, Object>) value : Collections.emptyMap();
+    }
+
+    // ES返回的copy_to等参数是数组，只有一个元素时与定义中的单个值比较
+    private static String stringValue(Object value) {
+        if (value instanceof Collection && ((Collection<?>) value).size() == 1) {
+            value = ((Collection<?>) value).iterator().next();
+        }
+        return value == null ? null : String.valueOf(value);
+    }
+
+    static class Diff {
+        final MigrationPlan plan = new MigrationPlan();
+        // 需要在原索引上新增或修改的字段
+        final Map<String, Map<String, Object>> fields = new LinkedHashMap<>();
+        final Settings.Builder settings = Settings.builder();
+    }
+
+}
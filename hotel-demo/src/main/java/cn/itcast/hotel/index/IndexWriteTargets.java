@@ -0,0 +1,63 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.constant.HotelConstants;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 增量同步时需要写入的索引。
+ * 平时只写hotel别名；重建索引期间同时写正在构建的新索引，避免切换别名后丢失这段时间的变更，
+ * 并记下这段时间同步过的酒店，导入结束后由HotelReindexJob按数据库当前状态再同步一次
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Component
+public class IndexWriteTargets {
+
+    private static final List<String> DEFAULT_TARGETS = Collections.singletonList(HotelConstants.HOTEL_INDEX);
+
+    private volatile List<String> targets = DEFAULT_TARGETS;
+    // 重建期间同步过的酒店
+    private final Set<Long> touched = ConcurrentHashMap.newKeySet();
+
+    public List<String> get() {
+        return targets;
+    }
+
+    public void startBuilding(String index) {
+        touched.clear();
+        targets = Arrays.asList(HotelConstants.HOTEL_INDEX, index);
+    }
+
+    public void stopBuilding() {
+        targets = DEFAULT_TARGETS;
+        touched.clear();
+    }
+
+    /**
+     * 记录重建期间同步过的酒店，不在重建时什么也不做
+     */
+    public void touch(Long id) {
+        if (targets != DEFAULT_TARGETS) {
+            touched.add(id);
+        }
+    }
+
+    /**
+     * 取出并清空重建期间同步过的酒店
+     */
+    public Set<Long> drainTouched() {
+        Set<Long> ids = new HashSet<>(touched);
+        touched.removeAll(ids);
+        return ids;
+    }
+
+}
@@ -1,7 +1,43 @@
 package cn.itcast.hotel.mapper;
 
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.HotelChecksum;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 public interface HotelMapper extends BaseMapper<Hotel> {
+
+    /**
+     * 一行的校验和，HotelDoc.checksum按相同的算法计算并写入索引
+     */
+    String CHECKSUM = "CRC32(CONCAT_WS('|', id, name, address, price, score, brand, city, star_name, business, "
+        + "longitude, latitude, pic))";
+
+    @Select("SELECT MIN(id) FROM tb_hotel")
+    Long selectMinId();
+
+    @Select("SELECT MAX(id) FROM tb_hotel")
+    Long selectMaxId();
+
+    /**
+     * 按id游标分页查询 (afterId, maxId] 区间内的酒店，不使用OFFSET
+     */
+    @Select("SELECT * FROM tb_hotel WHERE id > #{afterId} AND id <= #{maxId} ORDER BY id LIMIT #{limit}")
+    List<Hotel> selectAfterId(@Param("afterId") long afterId, @Param("maxId") long maxId, @Param("limit") int limit);
+
+    /**
+     * 按 id DIV rangeSize 分区间统计行数和校验和之和
+     */
+    @Select("SELECT id DIV #{rangeSize} AS `key`, COUNT(*) AS count, SUM(" + CHECKSUM + ") AS sum "
+        + "FROM tb_hotel GROUP BY `key`")
+    List<HotelChecksum> selectRangeChecksums(@Param("rangeSize") long rangeSize);
+
+    /**
+     * [fromId, toId) 区间内每一行的校验和
+     */
+    @Select("SELECT id AS `key`, 1 AS count, " + CHECKSUM + " AS sum FROM tb_hotel WHERE id >= #{fromId} AND id < #{toId}")
+    List<HotelChecksum> selectRowChecksums(@Param("fromId") long fromId, @Param("toId") long toId);
 }
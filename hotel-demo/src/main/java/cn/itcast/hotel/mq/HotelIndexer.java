@@ -0,0 +1,360 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.pojo.HotelChange;
+import cn.itcast.hotel.service.IHotelService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量索引：攒一批(数量或时间窗口)酒店变更消息后，
+ * 只查一次数据库、只发一次Bulk请求，Bulk成功的消息才ack；失败的变更写入IndexSpool后ack，由它在ES恢复后重放，
+ * 暂存文件写不进去时才nack重新入队。
+ * 同一个酒店在合并窗口内的多次变更只同步最后一次：新增/修改都是按id重新读库，结果只取决于最后的状态；
+ * 删除之后的新增同样以数据库为准，新增之后的删除则直接删除。被合并的消息与最后一条一起确认。
+ * 变更按酒店id分到多条lane，每条lane由自己的线程合并、发送，同一个酒店的变更始终在同一条lane里按顺序处理，
+ * 不同酒店的变更在多条lane上并行。IndexSpool重放暂存的变更、HotelReindexJob重新同步重建期间变更过的酒店、
+ * HotelReconcileJob修复不一致的酒店时也交给对应的lane，与实时变更在同一个线程里按顺序执行
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class HotelIndexer {
+
+    private final IHotelService hotelService;
+    private final IndexerProperties properties;
+    private final IndexSpool indexSpool;
+    private final Lane[] lanes;
+
+    private final Counter coalesced;
+    private final Counter acked;
+    private final Counter nacked;
+    // 从收到消息到确认的时间
+    private final Timer lag;
+
+    public HotelIndexer(IHotelService hotelService, IndexerProperties properties, IndexSpool indexSpool,
+                        MeterRegistry meterRegistry) {
+        this.hotelService = hotelService;
+        this.properties = properties;
+        this.indexSpool = indexSpool;
+        this.coalesced = Counter.builder("hotel.indexer.coalesced")
+            .description("被合并掉的酒店变更消息数").register(meterRegistry);
+        this.acked = Counter.builder("hotel.indexer.messages")
+            .description("处理完的酒店变更消息数").tag("result", "ack").register(meterRegistry);
+        this.nacked = Counter.builder("hotel.indexer.messages")
+            .description("处理完的酒店变更消息数").tag("result", "nack").register(meterRegistry);
+        this.lag = Timer.builder("hotel.indexer.lag")
+            .description("酒店变更消息从收到到确认的时间").register(meterRegistry);
+        int laneCount = properties.getLanes() > 0
+            ? properties.getLanes() : Runtime.getRuntime().availableProcessors();
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            Lane lane = new Lane(i);
+            lanes[i] = lane;
+            Gauge.builder("hotel.indexer.lane.pending", lane, Lane::pendingMessages)
+                .description("lane中等待同步的消息数").tag("lane", String.valueOf(i)).register(meterRegistry);
+            Gauge.builder("hotel.indexer.lane.busy", lane, l -> l.busy ? 1 : 0)
+                .description("lane是否正在同步").tag("lane", String.valueOf(i)).register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        for (Lane lane : lanes) {
+            lane.start();
+        }
+        indexSpool.startReplay(this::replay);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // 先停止重放，不再往lane里提交
+        indexSpool.stopReplay();
+        // 未ack的消息在连接关闭后会由MQ重新投递，这里不需要再补发
+        for (Lane lane : lanes) {
+            lane.flusher.shutdown();
+        }
+        for (Lane lane : lanes) {
+            lane.flusher.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 提交一条变更，由酒店id对应的lane合并、批量发送并确认
+     */
+    public void submit(HotelChange change, Channel channel, long deliveryTag) {
+        lanes[laneOf(change.getId())].submit(change, new Delivery(channel, deliveryTag, System.nanoTime()));
+    }
+
+    /**
+     * 在消息之外同步一批变更(重放暂存的变更、重建索引后重新同步、对账修复)：
+     * 按酒店id分给对应的lane，在lane的线程里同步，等所有lane执行完再返回。
+     * 同一个酒店的这些同步和实时变更不会同时执行，先读到的旧状态不会覆盖后读到的新状态
+     * @return 同步失败的酒店id及原因
+     */
+    public Map<Long, String> replay(List<HotelChange> changes) {
+        Map<Integer, List<HotelChange>> byLane = new HashMap<>();
+        for (HotelChange change : changes) {
+            byLane.computeIfAbsent(laneOf(change.getId()), i -> new ArrayList<>()).add(change);
+        }
+        List<Future<Map<Long, String>>> futures = new ArrayList<>(byLane.size());
+        for (Map.Entry<Integer, List<HotelChange>> entry : byLane.entrySet()) {
+            Lane lane = lanes[entry.getKey()];
+            futures.add(lane.flusher.submit(() -> lane.replay(entry.getValue())));
+        }
+        Map<Long, String> failures = new HashMap<>();
+        try {
+            for (Future<Map<Long, String>> future : futures) {
+                failures.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+        return failures;
+    }
+
+    private int laneOf(Long id) {
+        return (Long.hashCode(id) & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private class Lane {
+        private final int index;
+        private final Object lock = new Object();
+        // 按第一次收到变更的顺序排列，以下两个字段只在持有lock时访问
+        private final LinkedHashMap<Long, PendingChange> buffer = new LinkedHashMap<>();
+        private int pendingMessages;
+        private volatile boolean busy;
+        private ScheduledExecutorService flusher;
+
+        Lane(int index) {
+            this.index = index;
+        }
+
+        void start() {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "hotel-indexer-" + index));
+            long interval = properties.getFlushInterval().toMillis();
+            flusher.scheduleWithFixedDelay(() -> flush(false), interval, interval, TimeUnit.MILLISECONDS);
+        }
+
+        double pendingMessages() {
+            synchronized (lock) {
+                return pendingMessages;
+            }
+        }
+
+        void submit(HotelChange change, Delivery delivery) {
+            boolean full;
+            synchronized (lock) {
+                PendingChange pending = buffer.get(change.getId());
+                if (pending == null) {
+                    pending = new PendingChange(change, System.currentTimeMillis());
+                    buffer.put(change.getId(), pending);
+                } else {
+                    // 只保留最新的变更，两个队列之间没有顺序，有版本号时以版本号为准
+                    if (!isOlder(change, pending.change)) {
+                        pending.change = change;
+                    }
+                    coalesced.increment();
+                }
+                pending.deliveries.add(delivery);
+                pendingMessages++;
+                // 未确认的消息受prefetch限制，攒够一批就不再等待合并窗口
+                full = pendingMessages >= properties.getBatchSize();
+            }
+            // 关闭后不再发送，消息留在buffer中不ack，连接关闭后由MQ重新投递
+            if (full && !flusher.isShutdown()) {
+                try {
+                    flusher.execute(() -> flush(true));
+                } catch (RejectedExecutionException e) {
+                    log.debug("lane{}已关闭，不再发送", index);
+                }
+            }
+        }
+
+        /**
+         * @param all 为true时发送全部变更，否则只发送已经等满合并窗口的变更
+         */
+        private void flush(boolean all) {
+            // 1.取出到期的变更
+            List<PendingChange> batch = new ArrayList<>();
+            synchronized (lock) {
+                long due = System.currentTimeMillis() - properties.getCoalesceWindow().toMillis();
+                Iterator<PendingChange> iterator = buffer.values().iterator();
+                while (iterator.hasNext()) {
+                    PendingChange pending = iterator.next();
+                    // 按第一次收到的时间排列，遇到未到期的就可以停止
+                    if (!all && pending.firstSeen > due) {
+                        break;
+                    }
+                    iterator.remove();
+                    pendingMessages -= pending.deliveries.size();
+                    batch.add(pending);
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            busy = true;
+            try {
+                sync(batch);
+            } finally {
+                busy = false;
+            }
+        }
+
+        private Map<Long, String> replay(List<HotelChange> changes) {
+            busy = true;
+            try {
+                return hotelService.bulkSync(changes);
+            } finally {
+                busy = false;
+            }
+        }
+
+        private void sync(List<PendingChange> batch) {
+            List<HotelChange> changes = new ArrayList<>(batch.size());
+            for (PendingChange pending : batch) {
+                changes.add(pending.change);
+            }
+            // 2.发送Bulk请求
+            Map<Long, String> failures;
+            try {
+                failures = hotelService.bulkSync(changes);
+            } catch (Exception e) {
+                log.error("lane{}批量同步{}个酒店的变更失败", index, batch.size(), e);
+                spoolOrNack(batch);
+                return;
+            }
+            // 3.成功的ack，失败的写入暂存文件
+            List<PendingChange> failed = new ArrayList<>();
+            for (PendingChange pending : batch) {
+                String failure = failures.get(pending.change.getId());
+                if (failure == null) {
+                    pending.ack();
+                } else {
+                    log.warn("酒店{}同步失败：{}", pending.change.getId(), failure);
+                    failed.add(pending);
+                }
+            }
+            if (!failed.isEmpty()) {
+                spoolOrNack(failed);
+            }
+            log.debug("lane{}批量同步{}个酒店的变更，失败{}个", index, batch.size(), failures.size());
+        }
+
+        /**
+         * 变更已经刷到暂存文件后才ack，否则nack重新入队
+         */
+        private void spoolOrNack(List<PendingChange> failed) {
+            List<HotelChange> changes = new ArrayList<>(failed.size());
+            for (PendingChange pending : failed) {
+                changes.add(pending.change);
+            }
+            boolean spooled;
+            try {
+                spooled = indexSpool.append(changes);
+            } catch (RuntimeException e) {
+                log.error("lane{}写入暂存文件失败", index, e);
+                spooled = false;
+            }
+            if (!spooled) {
+                log.warn("lane{}的{}个酒店变更无法暂存，重新入队", index, failed.size());
+            }
+            for (PendingChange pending : failed) {
+                if (spooled) {
+                    pending.ack();
+                } else {
+                    pending.nack();
+                }
+            }
+        }
+    }
+
+    private static boolean isOlder(HotelChange change, HotelChange than) {
+        return change.getVersion() != null && than.getVersion() != null && change.getVersion() < than.getVersion();
+    }
+
+    private class PendingChange {
+        private HotelChange change;
+        private final long firstSeen;
+        // 合并到这个变更的所有消息
+        private final List<Delivery> deliveries = new ArrayList<>(1);
+
+        PendingChange(HotelChange change, long firstSeen) {
+            this.change = change;
+            this.firstSeen = firstSeen;
+        }
+
+        void ack() {
+            for (Delivery delivery : deliveries) {
+                delivery.ack();
+            }
+        }
+
+        void nack() {
+            for (Delivery delivery : deliveries) {
+                delivery.nack();
+            }
+        }
+    }
+
+    private class Delivery {
+        private final Channel channel;
+        private final long deliveryTag;
+        private final long receivedAt;
+
+        Delivery(Channel channel, long deliveryTag, long receivedAt) {
+            this.channel = channel;
+            this.deliveryTag = deliveryTag;
+            this.receivedAt = receivedAt;
+        }
+
+        void ack() {
+            try {
+                channel.basicAck(deliveryTag, false);
+                acked.increment();
+                lag.record(System.nanoTime() - receivedAt, TimeUnit.NANOSECONDS);
+            } catch (IOException | RuntimeException e) {
+                // 通道已关闭时消息会被重新投递
+                log.warn("消息ack失败，deliveryTag={}", deliveryTag, e);
+            }
+        }
+
+        void nack() {
+            try {
+                channel.basicNack(deliveryTag, false, true);
+                nacked.increment();
+            } catch (IOException | RuntimeException e) {
+                log.warn("消息nack失败，deliveryTag={}", deliveryTag, e);
+            }
+        }
+    }
+
+}
@@ -1,9 +1,12 @@
 package cn.itcast.hotel.mq;
 
 import cn.itcast.hotel.constant.MQConstants;
-import cn.itcast.hotel.service.IHotelService;
+import cn.itcast.hotel.pojo.HotelChange;
+import com.rabbitmq.client.Channel;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.AmqpHeaders;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.stereotype.Component;
 
 /**
@@ -15,16 +18,21 @@ import org.springframework.stereotype.Component;
 public class HotelListener {
 
     @Autowired
-    private IHotelService hotelService;
+    private HotelIndexer hotelIndexer;
 
-    @RabbitListener(queues = MQConstants.HOTEL_INSERT_QUEUE)
-    public void listenHotelInsertOrUpdate(Long id) {
-        hotelService.insertById(id);
+    @RabbitListener(queues = MQConstants.HOTEL_INSERT_QUEUE, containerFactory = "indexerContainerFactory")
+    public void listenHotelInsertOrUpdate(Long id, Channel channel,
+                                          @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag,
+                                          @Header(name = MQConstants.HOTEL_VERSION_HEADER, required = false)
+                                              Long version) {
+        hotelIndexer.submit(new HotelChange(id, false, version), channel, deliveryTag);
     }
 
-    @RabbitListener(queues = MQConstants.HOTEL_DELETE_QUEUE)
-    public void listenHotelDelete(Long id) {
-        hotelService.deleteById(id);
+    @RabbitListener(queues = MQConstants.HOTEL_DELETE_QUEUE, containerFactory = "indexerContainerFactory")
+    public void listenHotelDelete(Long id, Channel channel,
+                                  @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag,
+                                  @Header(name = MQConstants.HOTEL_VERSION_HEADER, required = false) Long version) {
+        hotelIndexer.submit(new HotelChange(id, true, version), channel, deliveryTag);
     }
 
 }
@@ -0,0 +1,316 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.pojo.HotelChange;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * ES不可用时暂存同步失败的酒店变更的本地文件，消息写入后即可ack，MQ不再反复重投。
+ * 文件整个映射到内存，开头16字节是读、写位置，之后是定长记录，只在末尾追加；
+ * 后台线程从读位置起批量重放，成功后才推进读位置，失败时按指数退避重试；全部重放完后读写位置归零，
+ * 末尾写满时把未重放的记录挪到开头，回收已经重放过的空间。
+ * 重放时一律按数据库的当前状态同步(数据库中没有的酒店会被删除)，并交给HotelIndexer中酒店id对应的lane执行，
+ * 与同一个酒店的实时变更在同一个线程里先后执行，后执行的读到的数据库状态更新，不会被先读到的旧状态覆盖
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class IndexSpool {
+
+    private static final int HEADER_SIZE = 16;
+    // id(8) + version(8) + flags(2) + attempts(2) + crc(4)
+    private static final int RECORD_SIZE = 24;
+    private static final long NO_VERSION = Long.MIN_VALUE;
+    private static final int FLAG_DELETE = 1;
+
+    private final IndexerProperties properties;
+    private final Counter dropped;
+
+    // 以下字段只在持有this锁时访问
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long readPos;
+    private long writePos;
+
+    private ScheduledExecutorService drainer;
+    // 只由drainer线程访问
+    private Function<List<HotelChange>, Map<Long, String>> replayer;
+    private long backoff;
+    private long nextAttemptAt;
+
+    public IndexSpool(IndexerProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.dropped = Counter.builder("hotel.indexer.spool.dropped")
+            .description("重试次数用完而丢弃的变更数").register(meterRegistry);
+        Gauge.builder("hotel.indexer.spool.size", this, IndexSpool::size)
+            .description("暂存文件中等待重放的变更数").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!properties.isSpoolEnabled()) {
+            return;
+        }
+        Path path = Paths.get(properties.getSpoolPath());
+        if (path.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+        }
+        synchronized (this) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, properties.getSpoolSize());
+            readPos = buffer.getLong(0);
+            writePos = buffer.getLong(8);
+            if (readPos < HEADER_SIZE || writePos < readPos || writePos > buffer.capacity()
+                || (readPos - HEADER_SIZE) % RECORD_SIZE != 0 || (writePos - HEADER_SIZE) % RECORD_SIZE != 0) {
+                if (readPos != 0 || writePos != 0) {
+                    log.warn("暂存文件{}的读写位置无效，清空", path);
+                }
+                reset();
+            } else if (writePos > readPos) {
+                log.info("暂存文件{}中有{}条变更等待重放", path, (writePos - readPos) / RECORD_SIZE);
+            }
+        }
+    }
+
+    /**
+     * 开始后台重放，由HotelIndexer在lane启动后调用
+     * @param replayer 按数据库当前状态同步一批变更，返回失败的酒店id及原因
+     */
+    public synchronized void startReplay(Function<List<HotelChange>, Map<Long, String>> replayer) {
+        if (buffer == null || drainer != null) {
+            return;
+        }
+        this.replayer = replayer;
+        backoff = properties.getSpoolRetryMin().toMillis();
+        drainer = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "hotel-index-spool"));
+        long interval = properties.getSpoolRetryMin().toMillis();
+        drainer.scheduleWithFixedDelay(this::drain, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止后台重放并等待正在进行的一批结束，未重放的记录留在文件中，下次启动后继续
+     */
+    public void stopReplay() throws InterruptedException {
+        ScheduledExecutorService drainer;
+        synchronized (this) {
+            drainer = this.drainer;
+        }
+        if (drainer != null) {
+            drainer.shutdown();
+            drainer.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException, IOException {
+        stopReplay();
+        synchronized (this) {
+            if (buffer == null) {
+                return;
+            }
+            buffer.force();
+            channel.close();
+        }
+    }
+
+    /**
+     * 追加一批变更并刷到磁盘，返回true后调用方就可以ack对应的消息
+     * @return 未开启或文件已满时返回false
+     */
+    public synchronized boolean append(List<HotelChange> changes) {
+        if (buffer == null || !ensureSpace(changes.size())) {
+            return false;
+        }
+        for (HotelChange change : changes) {
+            writeRecord(change, 0);
+        }
+        buffer.putLong(8, writePos);
+        buffer.force();
+        return true;
+    }
+
+    public synchronized double size() {
+        return buffer == null ? 0 : (writePos - readPos) / RECORD_SIZE;
+    }
+
+    /**
+     * 重放一批，由后台线程定时调用
+     */
+    void drain() {
+        if (System.currentTimeMillis() < nextAttemptAt) {
+            return;
+        }
+        // 1.读出一批，记下长度而不是结束位置，重放期间文件可能被挪动过
+        List<Record> records = new ArrayList<>();
+        long length;
+        synchronized (this) {
+            length = Math.min(writePos - readPos, (long) properties.getBatchSize() * RECORD_SIZE);
+            for (long pos = readPos; pos < readPos + length; pos += RECORD_SIZE) {
+                Record record = readRecord(pos);
+                if (record == null) {
+                    log.warn("暂存文件中位置{}的记录校验失败，跳过", pos);
+                } else {
+                    records.add(record);
+                }
+            }
+        }
+        if (length == 0) {
+            return;
+        }
+        // 2.重放，一律按数据库的当前状态同步
+        List<HotelChange> changes = new ArrayList<>(records.size());
+        for (Record record : records) {
+            changes.add(new HotelChange(record.change.getId(), false, record.change.getVersion()));
+        }
+        Map<Long, String> failures;
+        try {
+            failures = changes.isEmpty() ? Collections.<Long, String>emptyMap() : replayer.apply(changes);
+        } catch (Exception e) {
+            backoff = Math.min(backoff * 2, properties.getSpoolRetryMax().toMillis());
+            nextAttemptAt = System.currentTimeMillis() + backoff;
+            log.warn("重放暂存的{}条变更失败，{}ms后重试：{}", changes.size(), backoff, e.getMessage());
+            return;
+        }
+        backoff = properties.getSpoolRetryMin().toMillis();
+        // 3.失败的变更追加到末尾，再推进读位置
+        synchronized (this) {
+            List<Record> retries = new ArrayList<>();
+            for (Record record : records) {
+                if (failures.containsKey(record.change.getId())) {
+                    if (record.attempts + 1 < properties.getSpoolMaxAttempts()) {
+                        retries.add(record);
+                    } else {
+                        dropped.increment();
+                        log.error("酒店{}重放{}次仍然失败，丢弃：{}", record.change.getId(), record.attempts + 1,
+                            failures.get(record.change.getId()));
+                    }
+                }
+            }
+            if (!ensureSpace(retries.size())) {
+                // 没有空间放失败的变更，整批稍后再重放
+                return;
+            }
+            for (Record record : retries) {
+                writeRecord(record.change, record.attempts + 1);
+            }
+            readPos += length;
+            if (readPos == writePos) {
+                reset();
+            } else {
+                buffer.putLong(0, readPos);
+                buffer.putLong(8, writePos);
+            }
+            buffer.force();
+        }
+        log.info("重放暂存的{}条变更，失败{}条", changes.size(), failures.size());
+    }
+
+    /**
+     * 末尾放不下时，把读位置之后的记录挪到开头。
+     * 只在挪动的区域与原来的记录不重叠时才挪，先刷盘再改读写位置，中途崩溃时原来的记录和读写位置都还完整
+     * @return 末尾是否放得下count条记录
+     */
+    private boolean ensureSpace(int count) {
+        long needed = (long) count * RECORD_SIZE;
+        if (writePos + needed <= buffer.capacity()) {
+            return true;
+        }
+        long live = writePos - readPos;
+        if (live > readPos - HEADER_SIZE || HEADER_SIZE + live + needed > buffer.capacity()) {
+            return false;
+        }
+        for (long i = 0; i < live; i++) {
+            buffer.put((int) (HEADER_SIZE + i), buffer.get((int) (readPos + i)));
+        }
+        buffer.force();
+        readPos = HEADER_SIZE;
+        writePos = HEADER_SIZE + live;
+        buffer.putLong(0, readPos);
+        buffer.putLong(8, writePos);
+        buffer.force();
+        return true;
+    }
+
+    private void reset() {
+        readPos = HEADER_SIZE;
+        writePos = HEADER_SIZE;
+        buffer.putLong(0, readPos);
+        buffer.putLong(8, writePos);
+    }
+
+    private void writeRecord(HotelChange change, int attempts) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(change.getId());
+        record.putLong(change.getVersion() == null ? NO_VERSION : change.getVersion());
+        record.putShort((short) (change.isDelete() ? FLAG_DELETE : 0));
+        record.putShort((short) attempts);
+        record.putInt(crc(record.array()));
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            buffer.put((int) writePos + i, record.get(i));
+        }
+        writePos += RECORD_SIZE;
+    }
+
+    private Record readRecord(long pos) {
+        byte[] bytes = new byte[RECORD_SIZE];
+        for (int i = 0; i < RECORD_SIZE; i++) {
+            bytes[i] = buffer.get((int) pos + i);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes);
+        long id = record.getLong();
+        long version = record.getLong();
+        short flags = record.getShort();
+        short attempts = record.getShort();
+        if (record.getInt() != crc(bytes)) {
+            return null;
+        }
+        HotelChange change = new HotelChange(id, (flags & FLAG_DELETE) != 0, version == NO_VERSION ? null : version);
+        return new Record(change, attempts);
+    }
+
+    // 前20字节的校验和
+    private static int crc(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, RECORD_SIZE - 4);
+        return (int) crc.getValue();
+    }
+
+    private static class Record {
+        private final HotelChange change;
+        private final int attempts;
+
+        Record(HotelChange change, int attempts) {
+            this.change = change;
+            this.attempts = attempts;
+        }
+    }
+
+}
@@ -0,0 +1,23 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一条待同步到ES的酒店变更
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotelChange {
+    private Long id;
+    // true表示删除，false表示新增或修改
+    private boolean delete;
+    // 变更的版本号，用作ES的外部版本号，旧的写入会被ES拒绝；旧版本的消息没有版本号时为null
+    private Long version;
+}
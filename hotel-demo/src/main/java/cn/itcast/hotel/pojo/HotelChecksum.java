@@ -0,0 +1,22 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一个id区间(或一行)的行数和校验和之和
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HotelChecksum {
+    // 区间编号 id DIV rangeSize，按行统计时为酒店id
+    private Long key;
+    private Long count;
+    private Long sum;
+}
@@ -1,15 +1,27 @@
 package cn.itcast.hotel.pojo;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.zip.CRC32;
 
 @Data
 @NoArgsConstructor
 public class HotelDoc {
+
+    // 写入索引的_source：null也要写出，局部更新时才能把索引中的旧值改成null；distance只属于搜索结果
+    private static final ObjectWriter SOURCE_WRITER = new ObjectMapper()
+        .addMixIn(HotelDoc.class, SourceView.class)
+        .writerFor(HotelDoc.class);
+
     private Long id;
     private String name;
     private String address;
@@ -24,6 +36,8 @@ public class HotelDoc {
     private Object distance;
     private Boolean isAD;
     private List<String> suggestion;
+    // 数据库中这一行的校验和，与HotelMapper.CHECKSUM的算法相同，用于对账
+    private Long checksum;
 
     public HotelDoc(Hotel hotel) {
         this.id = hotel.getId();
@@ -41,5 +55,39 @@ public class HotelDoc {
         this.suggestion = new ArrayList<>(businesses.length + 1);
         this.suggestion.add(this.brand);
         Collections.addAll(this.suggestion, businesses);
+        this.checksum = checksum(hotel);
+    }
+
+    /**
+     * 写入索引的JSON，响应中的输出方式见JacksonConfig
+     */
+    public String toSource() throws JsonProcessingException {
+        return SOURCE_WRITER.writeValueAsString(this);
+    }
+
+    /**
+     * 与MySQL的 CRC32(CONCAT_WS('|', ...)) 相同：跳过null，其余按字符串用|连接后取UTF-8字节的CRC32
+     */
+    public static long checksum(Hotel hotel) {
+        Object[] values = {hotel.getId(), hotel.getName(), hotel.getAddress(), hotel.getPrice(), hotel.getScore(),
+            hotel.getBrand(), hotel.getCity(), hotel.getStarName(), hotel.getBusiness(), hotel.getLongitude(),
+            hotel.getLatitude(), hotel.getPic()};
+        StringBuilder sb = new StringBuilder();
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(value);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+
+    @JsonIgnoreProperties("distance")
+    private interface SourceView {
     }
 }
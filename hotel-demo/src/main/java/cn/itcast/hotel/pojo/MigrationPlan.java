@@ -0,0 +1,37 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 当前索引与索引定义的差异，以及迁移需要执行的操作
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+public class MigrationPlan {
+
+    public enum Action {
+        // 已经是最新的定义
+        NONE,
+        // 还没有索引，从数据库全量构建
+        CREATE,
+        // 只有新增字段和可动态修改的参数，在原索引上修改
+        UPDATE,
+        // 有不能在原索引上修改的差异，重建索引后切换别名
+        REINDEX
+    }
+
+    // hotel别名当前指向的索引
+    private String index;
+    // 索引的_meta.version，没有时为0
+    private Integer currentVersion;
+    private Integer targetVersion;
+    private Action action = Action.NONE;
+    // 差异明细
+    private List<String> changes = new ArrayList<>();
+}
@@ -1,10 +1,12 @@
 package cn.itcast.hotel.pojo;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author kaede
@@ -17,4 +19,21 @@ import java.util.List;
 public class PageResult {
     private Long total;
     private List<HotelDoc> hotels;
+    // 过滤项，只有/hotel/search会返回
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, List<String>> filters;
+    // 下一页的游标，没有下一页时为空
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor;
+    // 为true时total只是下限，实际数量至少为total
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean totalApprox;
+    // 不统计总数时，是否还有下一页
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean hasMore;
+
+    public PageResult(Long total, List<HotelDoc> hotels) {
+        this.total = total;
+        this.hotels = hotels;
+    }
 }
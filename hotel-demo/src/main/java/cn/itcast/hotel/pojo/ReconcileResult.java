@@ -0,0 +1,24 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReconcileResult {
+    // 比对的id区间数
+    private Long ranges;
+    // 校验和不一致的区间数
+    private Long driftedRanges;
+    // 重新同步的酒店数
+    private Long repaired;
+    // 耗时，毫秒
+    private Long took;
+}
@@ -0,0 +1,22 @@
+package cn.itcast.hotel.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReindexResult {
+    // 新版本索引名
+    private String index;
+    // 写入的文档数
+    private Long total;
+    // 耗时，毫秒
+    private Long took;
+}
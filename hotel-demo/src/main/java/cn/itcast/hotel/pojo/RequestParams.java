@@ -24,4 +24,10 @@ public class RequestParams {
     private Integer minPrice;
     private Integer maxPrice;
     private String location;
+    // 游标分页时上一页返回的cursor，为空时按page分页
+    private String cursor;
+    // 返回字段的投影：list、map、detail，为空时为detail
+    private String view;
+    // 总数的统计方式：exact、capped、none，为空时使用配置的默认值
+    private String totalHits;
 }
@@ -1,18 +1,46 @@
 package cn.itcast.hotel.service;
 
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.HotelChange;
 import cn.itcast.hotel.pojo.PageResult;
 import cn.itcast.hotel.pojo.RequestParams;
 import com.baomidou.mybatisplus.extension.service.IService;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface IHotelService extends IService<Hotel> {
     PageResult search(RequestParams params);
     Map<String, List<String>> filters(RequestParams params);
+
+    /**
+     * 一次请求同时返回分页结果和过滤项，等价于search加filters
+     */
+    PageResult searchWithFilters(RequestParams params);
+
     List<String> getSuggestions(String key);
 
-    void insertById(Long id);
-    void deleteById(Long id);
+    // 以下为异步版本，等待ES响应时不占用调用线程
+    CompletableFuture<PageResult> searchAsync(RequestParams params);
+
+    /**
+     * 直通模式的搜索，不经过缓存，返回的writer把ES的响应直接改写后写出
+     */
+    CompletableFuture<SearchResultWriter> searchRawAsync(RequestParams params);
+    CompletableFuture<Map<String, List<String>>> filtersAsync(RequestParams params);
+    CompletableFuture<PageResult> searchWithFiltersAsync(RequestParams params);
+    CompletableFuture<List<String>> getSuggestionsAsync(String key);
+
+    /**
+     * @param version 变更的版本号，不为空时使用ES外部版本号，比索引中旧的写入会被忽略
+     */
+    void insertById(Long id, Long version);
+    void deleteById(Long id, Long version);
+
+    /**
+     * 用一次Bulk请求同步一批酒店变更
+     * @return 同步失败的酒店id及失败原因，全部成功时为空
+     */
+    Map<Long, String> bulkSync(List<HotelChange> changes);
 }
@@ -0,0 +1,21 @@
+package cn.itcast.hotel.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 直通模式的搜索结果，由调用方决定写到哪里，controller把它包装成响应体
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@FunctionalInterface
+public interface SearchResultWriter {
+
+    /**
+     * 把搜索结果写入out，只能调用一次，不关闭out
+     */
+    void writeTo(OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,211 @@
+package cn.itcast.hotel.service.impl;
+
+import cn.itcast.hotel.config.SearchProperties;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Cancellable;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.client.RequestOptions;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.ResponseListener;
+import org.elasticsearch.client.RestHighLevelClient;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 异步搜索：请求发出后不占用线程，响应回来后在一个小线程池里解析。
+ * 同时在途的请求数有上限，超过时直接拒绝，避免ES变慢时请求无限堆积
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Component
+public class AsyncSearchClient {
+
+    private final RestHighLevelClient restHighLevelClient;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+
+    public AsyncSearchClient(RestHighLevelClient restHighLevelClient, SearchProperties properties) {
+        this.restHighLevelClient = restHighLevelClient;
+        this.inFlight = new Semaphore(properties.getMaxInFlight());
+        int threads = properties.getAsyncThreads() > 0
+            ? properties.getAsyncThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads,
+            r -> new Thread(r, "search-async-" + counter.incrementAndGet()));
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+    }
+
+    /**
+     * 发送异步搜索请求，并在解析线程池中解析响应，不占用ES客户端的IO线程。
+     * 取消返回的future时也会取消ES请求
+     */
+    public <T> CompletableFuture<T> search(SearchRequest request, Function<SearchResponse, T> parser) {
+        CompletableFuture<SearchResponse> response = send(request);
+        CompletableFuture<T> result = response.thenApplyAsync(parser, executor);
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                response.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<SearchResponse> send(SearchRequest request) {
+        if (!inFlight.tryAcquire()) {
+            return failed(new RejectedExecutionException("在途的搜索请求过多"));
+        }
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        future.whenComplete((response, e) -> inFlight.release());
+        Cancellable cancellable;
+        try {
+            cancellable = restHighLevelClient.searchAsync(request, RequestOptions.DEFAULT,
+                new ActionListener<SearchResponse>() {
+                    @Override
+                    public void onResponse(SearchResponse response) {
+                        future.complete(response);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 用低级客户端发送搜索请求，返回未解析的响应，调用方直接读取响应体。
+     * 同样受在途请求数限制，取消返回的future时也会取消ES请求
+     * @param parameters URL参数，如filter_path
+     */
+    public CompletableFuture<Response> searchRaw(SearchRequest request, Map<String, String> parameters) {
+        if (!inFlight.tryAcquire()) {
+            return failed(new RejectedExecutionException("在途的搜索请求过多"));
+        }
+        CompletableFuture<Response> future = new CompletableFuture<>();
+        future.whenComplete((response, e) -> inFlight.release());
+        Cancellable cancellable;
+        try {
+            Request lowLevelRequest = rawRequest(request, parameters);
+            cancellable = restHighLevelClient.getLowLevelClient().performRequestAsync(lowLevelRequest,
+                new ResponseListener() {
+                    @Override
+                    public void onSuccess(Response response) {
+                        future.complete(response);
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        future.completeExceptionally(e);
+                    }
+                });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        future.whenComplete((response, e) -> {
+            if (future.isCancelled()) {
+                cancellable.cancel();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 把SearchRequest转换成低级客户端的请求，只带上DSL和路由，搜索用到的其他请求级参数都是默认值
+     */
+    static Request rawRequest(SearchRequest request, Map<String, String> parameters) {
+        Request lowLevelRequest = new Request("POST", "/" + String.join(",", request.indices()) + "/_search");
+        lowLevelRequest.addParameters(parameters);
+        // 按city路由时只查询一个分片
+        if (request.routing() != null) {
+            lowLevelRequest.addParameter("routing", request.routing());
+        }
+        lowLevelRequest.setJsonEntity(request.source().toString());
+        return lowLevelRequest;
+    }
+
+    /**
+     * 与thenCompose相同，但取消返回的future时会同时取消first和next返回的future，
+     * thenCompose得到的future取消时不会传递给它们，ES请求会继续执行
+     */
+    public static <T, U> CompletableFuture<U> compose(CompletableFuture<T> first,
+                                                      Function<? super T, CompletableFuture<U>> next) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<U>> second = new AtomicReference<>();
+        first.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(unwrap(e));
+                return;
+            }
+            CompletableFuture<U> future;
+            try {
+                future = next.apply(value);
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            second.set(future);
+            future.whenComplete((nextValue, ex) -> {
+                if (ex == null) {
+                    result.complete(nextValue);
+                } else {
+                    result.completeExceptionally(unwrap(ex));
+                }
+            });
+            // 在设置second之前已经被取消
+            if (result.isCancelled()) {
+                future.cancel(false);
+            }
+        });
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                first.cancel(false);
+                CompletableFuture<U> future = second.get();
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        });
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    public static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+}
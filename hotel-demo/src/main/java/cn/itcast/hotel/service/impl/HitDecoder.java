@@ -0,0 +1,56 @@
+package cn.itcast.hotel.service.impl;
+
+import cn.itcast.hotel.pojo.HotelDoc;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.search.SearchHit;
+import org.springframework.util.ObjectUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 把搜索结果的hit解析成HotelDoc。
+ * 共用一个线程安全的ObjectReader，直接从hit的_source字节解析，不再为每个hit创建ObjectMapper、复制成String
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public final class HitDecoder {
+
+    private static final ObjectReader READER = new ObjectMapper().readerFor(HotelDoc.class);
+
+    private HitDecoder() {
+    }
+
+    /**
+     * @param withDistance 第一个排序值是否为距离，是则设置到distance
+     */
+    public static List<HotelDoc> decode(SearchHit[] hits, boolean withDistance) throws IOException {
+        List<HotelDoc> hotels = new ArrayList<>(hits.length);
+        for (SearchHit hit : hits) {
+            hotels.add(decode(hit, withDistance));
+        }
+        return hotels;
+    }
+
+    public static HotelDoc decode(SearchHit hit, boolean withDistance) throws IOException {
+        BytesReference source = hit.getSourceRef();
+        if (source == null) {
+            throw new IOException("酒店" + hit.getId() + "没有返回_source");
+        }
+        // 单段的BytesArray直接返回底层数组，不复制
+        BytesRef bytes = source.toBytesRef();
+        HotelDoc hotelDoc = READER.readValue(bytes.bytes, bytes.offset, bytes.length);
+        Object[] sortValues = hit.getSortValues();
+        if (withDistance && !ObjectUtils.isEmpty(sortValues)) {
+            hotelDoc.setDistance(sortValues[0]);
+        }
+        return hotelDoc;
+    }
+
+}
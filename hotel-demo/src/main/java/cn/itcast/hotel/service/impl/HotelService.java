@@ -1,76 +1,413 @@
 package cn.itcast.hotel.service.impl;
 
+import cn.itcast.hotel.cache.GeoCandidates;
+import cn.itcast.hotel.cache.GeoCellCache;
+import cn.itcast.hotel.cache.GeoCellKey;
+import cn.itcast.hotel.cache.SearchKey;
+import cn.itcast.hotel.cache.SearchResultCache;
+import cn.itcast.hotel.cache.SingleFlight;
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.config.SearchProperties;
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.constant.HotelView;
+import cn.itcast.hotel.constant.TotalHitsPolicy;
+import cn.itcast.hotel.index.CityRouting;
+import cn.itcast.hotel.index.DocFingerprints;
+import cn.itcast.hotel.index.IndexWriteTargets;
 import cn.itcast.hotel.mapper.HotelMapper;
 import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.HotelChange;
 import cn.itcast.hotel.pojo.HotelDoc;
 import cn.itcast.hotel.pojo.PageResult;
 import cn.itcast.hotel.pojo.RequestParams;
 import cn.itcast.hotel.service.IHotelService;
+import cn.itcast.hotel.service.SearchResultWriter;
+import cn.itcast.hotel.suggest.SuggestionIndex;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.DocWriteResponse;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.delete.DeleteRequest;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequest;
+import org.apache.lucene.search.TotalHits;
 import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.unit.DistanceUnit;
 import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.index.query.functionscore.FunctionScoreQueryBuilder;
 import org.elasticsearch.index.query.functionscore.ScoreFunctionBuilders;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
 import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.fetch.subphase.FetchSourceContext;
+import org.elasticsearch.search.sort.GeoDistanceSortBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.elasticsearch.search.sort.SortOrder;
 import org.elasticsearch.search.suggest.SuggestBuilder;
 import org.elasticsearch.search.suggest.SuggestBuilders;
 import org.elasticsearch.search.suggest.completion.CompletionSuggestion;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PostConstruct;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @Service
 public class HotelService extends ServiceImpl<HotelMapper, Hotel> implements IHotelService {
 
     @Autowired
     private RestHighLevelClient restHighLevelClient;
+    @Autowired
+    private IndexWriteTargets indexWriteTargets;
+    @Autowired
+    private SearchResultCache searchResultCache;
+    @Autowired
+    private GeoCellCache geoCellCache;
+    @Autowired
+    private SuggestionIndex suggestionIndex;
+    @Autowired
+    private SearchProperties searchProperties;
+    @Autowired
+    private AsyncSearchClient asyncSearchClient;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private DocFingerprints docFingerprints;
+    @Autowired
+    private IndexerProperties indexerProperties;
+    @Autowired
+    private CityRouting cityRouting;
+
+    private SingleFlight<SearchKey, PageResult> searchFlight;
+    private SingleFlight<GeoCellKey, GeoCandidates> candidatesFlight;
+    private SingleFlight<SearchKey, Map<String, List<String>>> filtersFlight;
+    private SingleFlight<String, List<String>> suggestionFlight;
+    // 内容没有变化而省掉的写入
+    private Counter skippedWrites;
+    private Counter noopWrites;
+    // 版本号比索引中旧而被拒绝的写入
+    private Counter staleWrites;
+
+    // 过滤条件用到的字段
+    private static final String[] FILTER_FIELDS = {"city", "brand", "starName", "price"};
+
+    @PostConstruct
+    public void init() {
+        searchFlight = new SingleFlight<>("search", meterRegistry);
+        candidatesFlight = new SingleFlight<>("geoCandidates", meterRegistry);
+        filtersFlight = new SingleFlight<>("filters", meterRegistry);
+        suggestionFlight = new SingleFlight<>("suggestion", meterRegistry);
+        skippedWrites = Counter.builder("hotel.indexer.unchanged").description("内容没有变化而省掉的写入")
+            .tag("type", "fingerprint").register(meterRegistry);
+        noopWrites = Counter.builder("hotel.indexer.unchanged").description("内容没有变化而省掉的写入")
+            .tag("type", "detect_noop").register(meterRegistry);
+        staleWrites = Counter.builder("hotel.indexer.stale").description("版本号过时而被拒绝的写入")
+            .register(meterRegistry);
+    }
 
     @Override
     public PageResult search(RequestParams params) {
+        // 附近酒店优先使用所在格子的候选集
+        if (geoCellCache.supports(params)) {
+            checkOffset(params);
+            PageResult result = geoCellCache.search(params, key -> coalesce(candidatesFlight, key,
+                () -> loadCandidates(params, key)));
+            if (result != null) {
+                return result;
+            }
+            // 候选集覆盖不到本页，退回ES，候选集生成的游标先换成ES的排序值
+            return searchResultCache.get(withSearchAfter(params), false, p -> coalesce(searchFlight,
+                SearchKey.of(p, false), () -> doSearch(p, false)));
+        }
+        return searchResultCache.get(params, false, p -> coalesce(searchFlight, SearchKey.of(p, false),
+            () -> doSearch(p, false)));
+    }
+
+    @Override
+    public PageResult searchWithFilters(RequestParams params) {
+        return searchResultCache.get(params, true, p -> coalesce(searchFlight, SearchKey.of(p, true),
+            () -> doSearch(p, true)));
+    }
+
+    private PageResult doSearch(RequestParams params, boolean withFilters) {
         try {
             // 1.准备request
-            SearchRequest searchRequest = new SearchRequest("hotel");
-            // 2.准备DSL
-            // 2.1.query
-            buildBasicQuery(params, searchRequest);
-            // 2.2.分页
-            int page = params.getPage();
-            int size = params.getSize();
-            searchRequest.source().from((page - 1) * size).size(size);
-            // 2.3.排序
-            String location = params.getLocation();
-            if (!StringUtils.isEmpty(location)) {
-                searchRequest.source().sort(
-                    SortBuilders.geoDistanceSort("location", new GeoPoint(location)
-                ).order(SortOrder.ASC).unit(DistanceUnit.KILOMETERS));
-            }
+            SearchRequest searchRequest = buildSearchRequest(params, withFilters);
             // 3.发送请求，得到响应
             SearchResponse response = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
             // 4.解析响应
-            return handleResponse(response);
+            return parseSearchResponse(response, params, withFilters);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<PageResult> searchAsync(RequestParams params) {
+        if (geoCellCache.supports(params)) {
+            CompletableFuture<PageResult> future;
+            try {
+                checkOffset(params);
+                future = geoCellCache.searchAsync(params, key -> coalesceAsync(candidatesFlight, key,
+                    () -> asyncSearchClient.search(buildCandidatesRequest(params, key), this::parseCandidates)));
+            } catch (RuntimeException e) {
+                return AsyncSearchClient.failed(e);
+            }
+            return AsyncSearchClient.compose(future, result -> result != null
+                ? CompletableFuture.completedFuture(result)
+                : AsyncSearchClient.compose(withSearchAfterAsync(params), p -> doSearchAsync(p, false)));
+        }
+        return searchResultCache.getAsync(params, false, p -> coalesceAsync(searchFlight, SearchKey.of(p, false),
+            () -> doSearchAsync(p, false)));
+    }
+
+    @Override
+    public CompletableFuture<SearchResultWriter> searchRawAsync(RequestParams params) {
+        SearchRequest searchRequest;
+        try {
+            searchRequest = buildSearchRequest(params, false);
+        } catch (RuntimeException e) {
+            return AsyncSearchClient.failed(e);
+        }
+        boolean geoSort = !StringUtils.isEmpty(params.getLocation());
+        String sort = SearchCursor.sortOf(params.getLocation());
+        int size = params.getSize();
+        return asyncSearchClient.searchRaw(searchRequest, RawSearchWriter.PARAMETERS)
+            .thenApply(response -> out -> {
+                try (InputStream in = response.getEntity().getContent()) {
+                    RawSearchWriter.write(in, out, geoSort, sort, size);
+                }
+            });
+    }
+
+    @Override
+    public CompletableFuture<PageResult> searchWithFiltersAsync(RequestParams params) {
+        return searchResultCache.getAsync(params, true, p -> coalesceAsync(searchFlight, SearchKey.of(p, true),
+            () -> doSearchAsync(p, true)));
+    }
+
+    private CompletableFuture<PageResult> doSearchAsync(RequestParams params, boolean withFilters) {
+        SearchRequest searchRequest;
+        try {
+            searchRequest = buildSearchRequest(params, withFilters);
+        } catch (RuntimeException e) {
+            return AsyncSearchClient.failed(e);
+        }
+        return asyncSearchClient.search(searchRequest,
+            response -> parseSearchResponse(response, params, withFilters));
+    }
+
+    private SearchRequest buildSearchRequest(RequestParams params, boolean withFilters) {
+        // 1.准备request
+        SearchRequest searchRequest = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        // 2.准备DSL
+        // 2.1.query
+        buildBasicQuery(params, searchRequest);
+        // 2.2.分页，有游标时使用search_after，每一页的代价都相同；否则使用from+size，只允许浅分页
+        int size = params.getSize();
+        TotalHitsPolicy policy = totalHitsPolicy(params);
+        // 不统计总数时多查一条，用来判断是否还有下一页
+        int fetchSize = policy == TotalHitsPolicy.NONE ? size + 1 : size;
+        if (StringUtils.hasText(params.getCursor())) {
+            String sort = SearchCursor.sortOf(params.getLocation());
+            Object[] searchAfter = SearchCursor.decode(params.getCursor(), sort).searchAfter();
+            searchRequest.source().size(fetchSize).searchAfter(searchAfter);
+        } else {
+            checkOffset(params);
+            searchRequest.source().from((params.getPage() - 1) * size).size(fetchSize);
+        }
+        // 总数的统计方式
+        if (policy == TotalHitsPolicy.EXACT) {
+            searchRequest.source().trackTotalHits(true);
+        } else if (policy == TotalHitsPolicy.CAPPED) {
+            searchRequest.source().trackTotalHitsUpTo(searchProperties.getTotalHitsCap());
+        } else {
+            searchRequest.source().trackTotalHits(false);
+        }
+        // 2.3.排序
+        String location = params.getLocation();
+        if (!StringUtils.isEmpty(location)) {
+            searchRequest.source().sort(distanceSort(location));
+        } else {
+            searchRequest.source().sort(SortBuilders.scoreSort());
+        }
+        // 最后按id排序，保证顺序稳定，游标才能准确定位到下一页
+        searchRequest.source().sort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        // 2.4.只返回投影的字段
+        HotelView view = HotelView.of(params.getView());
+        searchRequest.source().fetchSource(view.getIncludes(), view.getExcludes());
+        // 2.5.聚合，与分页结果在同一次请求中返回，过滤项不需要再单独查询
+        if (withFilters) {
+            buildAggregation(searchRequest);
+        }
+        return searchRequest;
+    }
+
+    private static GeoDistanceSortBuilder distanceSort(String location) {
+        return SortBuilders.geoDistanceSort("location", new GeoPoint(location))
+            .order(SortOrder.ASC).unit(DistanceUnit.KILOMETERS);
+    }
+
+    /**
+     * 把候选集生成的游标换成ES的排序值：上一页最后一个酒店按同样的排序再查一次，取ES算出的距离
+     */
+    private RequestParams withSearchAfter(RequestParams params) {
+        SearchCursor cursor = localCursor(params);
+        if (cursor == null) {
+            return params;
+        }
+        try {
+            SearchResponse response = restHighLevelClient.search(buildCursorRequest(params, cursor),
+                RequestOptions.DEFAULT);
+            return withCursor(params, parseCursor(response, cursor));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private CompletableFuture<RequestParams> withSearchAfterAsync(RequestParams params) {
+        SearchCursor cursor;
+        try {
+            cursor = localCursor(params);
+        } catch (RuntimeException e) {
+            return AsyncSearchClient.failed(e);
+        }
+        if (cursor == null) {
+            return CompletableFuture.completedFuture(params);
+        }
+        return asyncSearchClient.search(buildCursorRequest(params, cursor),
+            response -> withCursor(params, parseCursor(response, cursor)));
+    }
+
+    private static SearchCursor localCursor(RequestParams params) {
+        if (!StringUtils.hasText(params.getCursor())) {
+            return null;
+        }
+        SearchCursor cursor = SearchCursor.decode(params.getCursor(), SearchCursor.sortOf(params.getLocation()));
+        if (!cursor.isLocal()) {
+            return null;
+        }
+        // 候选集生成的游标是[距离, id]
+        if (cursor.getAfter().length != 2) {
+            throw new IllegalArgumentException("无效的cursor：" + params.getCursor());
+        }
+        return cursor;
+    }
+
+    private SearchRequest buildCursorRequest(RequestParams params, SearchCursor cursor) {
+        SearchRequest searchRequest = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        searchRequest.source()
+            .query(QueryBuilders.idsQuery().addIds(String.valueOf(cursor.getAfter()[1])))
+            .size(1)
+            .trackTotalHits(false)
+            .fetchSource(false)
+            .sort(distanceSort(params.getLocation()))
+            .sort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        return searchRequest;
+    }
+
+    private static String parseCursor(SearchResponse response, SearchCursor cursor) {
+        SearchHit[] hits = response.getHits().getHits();
+        // 这个酒店已经被删除时只能沿用本地算的距离，边界上可能多出或漏掉个别酒店
+        return SearchCursor.encode(cursor.getSort(), hits.length == 0 ? cursor.getAfter() : hits[0].getSortValues());
+    }
+
+    private static RequestParams withCursor(RequestParams params, String cursor) {
+        RequestParams copy = new RequestParams();
+        BeanUtils.copyProperties(params, copy);
+        copy.setCursor(cursor);
+        return copy;
+    }
+
+    private TotalHitsPolicy totalHitsPolicy(RequestParams params) {
+        return TotalHitsPolicy.of(params.getTotalHits(), searchProperties.getTotalHits());
+    }
+
+    private void checkOffset(RequestParams params) {
+        if (StringUtils.hasText(params.getCursor())) {
+            return;
+        }
+        if (params.getPage() * params.getSize() > searchProperties.getMaxOffsetWindow()) {
+            throw new IllegalArgumentException("分页过深，请使用cursor翻页");
+        }
+    }
+
+    private GeoCandidates loadCandidates(RequestParams params, GeoCellKey key) {
+        try {
+            SearchResponse response = restHighLevelClient.search(buildCandidatesRequest(params, key),
+                RequestOptions.DEFAULT);
+            return parseCandidates(response);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    // 查询离格子中心最近的一批酒店作为候选集
+    private SearchRequest buildCandidatesRequest(RequestParams params, GeoCellKey key) {
+        SearchRequest searchRequest = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        buildBasicQuery(params, searchRequest);
+        searchRequest.source().size(geoCellCache.candidateSize());
+        // 候选集被格子内所有请求共享，精确计数一次，再按各请求的统计方式返回
+        searchRequest.source().trackTotalHits(true);
+        // 每个投影的所有字段都包含id和location，排序只需要这两个字段
+        searchRequest.source().fetchSource(key.getView().getIncludes(), key.getView().getExcludes());
+        searchRequest.source().sort(
+            SortBuilders.geoDistanceSort("location", GeoCellCache.center(key.getCell()))
+                .order(SortOrder.ASC).unit(DistanceUnit.KILOMETERS));
+        searchRequest.source().sort(SortBuilders.fieldSort("id").order(SortOrder.ASC));
+        return searchRequest;
+    }
+
+    private GeoCandidates parseCandidates(SearchResponse response) {
+        SearchHit[] hits = response.getHits().getHits();
+        List<HotelDoc> hotels;
+        try {
+            hotels = HitDecoder.decode(hits, false);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        double radius = hits.length == 0 ? 0 : ((Number) hits[hits.length - 1].getSortValues()[0]).doubleValue();
+        // 不满一批说明已经包含了全部符合条件的酒店
+        return new GeoCandidates(response.getHits().getTotalHits().value, hotels, radius,
+            hits.length < geoCellCache.candidateSize());
+    }
+
+    private PageResult parseSearchResponse(SearchResponse response, RequestParams params, boolean withFilters) {
+        try {
+            PageResult result = handleResponse(response, params);
+            if (withFilters) {
+                result.setFilters(handleAggregations(response.getAggregations()));
+            }
+            return result;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -78,91 +415,415 @@ public class HotelService extends ServiceImpl<HotelMapper, Hotel> implements IHo
 
     @Override
     public Map<String, List<String>> filters(RequestParams params) {
+        return coalesce(filtersFlight, SearchKey.forFilters(params), () -> doFilters(params));
+    }
+
+    private Map<String, List<String>> doFilters(RequestParams params) {
         try {
             // 1.准备request
-            SearchRequest searchRequest = new SearchRequest("hotel");
-            // 2.准备DSL
-            // 2.1.query
-            buildBasicQuery(params, searchRequest);
-            searchRequest.source().size(0);
-            // 2.2.聚合
-            buildAggregation(searchRequest);
+            SearchRequest searchRequest = buildFiltersRequest(params);
             // 3.发送请求
             SearchResponse searchResponse = restHighLevelClient.search(searchRequest, RequestOptions.DEFAULT);
             // 4.解析结果
-            // 处理聚合的结果
-            Map<String, List<String>> resultMap = new HashMap<>();
-            Aggregations aggregations = searchResponse.getAggregations();
-            // 根据名称获取聚合结果
-            List<String> brandList = getAggByName(aggregations, "brandAgg");
-            List<String> cityList = getAggByName(aggregations, "cityAgg");
-            List<String> starNameList = getAggByName(aggregations, "starNameAgg");
-            resultMap.put("brand", brandList);
-            resultMap.put("city", cityList);
-            resultMap.put("starName", starNameList);
-            return resultMap;
+            return handleAggregations(searchResponse.getAggregations());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public CompletableFuture<Map<String, List<String>>> filtersAsync(RequestParams params) {
+        return coalesceAsync(filtersFlight, SearchKey.forFilters(params), () -> asyncSearchClient.search(
+            buildFiltersRequest(params), response -> handleAggregations(response.getAggregations())));
+    }
+
+    private SearchRequest buildFiltersRequest(RequestParams params) {
+        // 1.准备request
+        SearchRequest searchRequest = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        // 2.准备DSL
+        // 2.1.query
+        buildBasicQuery(params, searchRequest);
+        searchRequest.source().size(0);
+        // 2.2.聚合
+        buildAggregation(searchRequest);
+        return searchRequest;
+    }
+
+    // 处理聚合的结果
+    private Map<String, List<String>> handleAggregations(Aggregations aggregations) {
+        Map<String, List<String>> resultMap = new HashMap<>();
+        // 根据名称获取聚合结果
+        List<String> brandList = getAggByName(aggregations, "brandAgg");
+        List<String> cityList = getAggByName(aggregations, "cityAgg");
+        List<String> starNameList = getAggByName(aggregations, "starNameAgg");
+        resultMap.put("brand", brandList);
+        resultMap.put("city", cityList);
+        resultMap.put("starName", starNameList);
+        return resultMap;
+    }
+
     @Override
     public List<String> getSuggestions(String key) {
+        // 优先使用本地补全索引
+        if (suggestionIndex.isReady()) {
+            return suggestionIndex.suggest(key);
+        }
+        return coalesce(suggestionFlight, String.valueOf(key), () -> doGetSuggestions(key));
+    }
+
+    private List<String> doGetSuggestions(String key) {
         try {
             // 1.准备request
-            SearchRequest request = new SearchRequest("hotel");
-            // 2.准备DSL
-            request.source().suggest(new SuggestBuilder().addSuggestion(
-                "suggestions", SuggestBuilders.completionSuggestion("suggestion")
-                    .prefix(key).skipDuplicates(true).size(10)
-            ));
+            SearchRequest request = buildSuggestRequest(key);
             // 3.发起请求
             SearchResponse response = restHighLevelClient.search(request, RequestOptions.DEFAULT);
             // 4.解析结果
-            // 4.1.根据名称获取补全结果
-            CompletionSuggestion suggestions = response.getSuggest().getSuggestion("suggestions");
-            // 4.2.获取options进行遍历
-            List<CompletionSuggestion.Entry.Option> options = suggestions.getOptions();
-            List<String> list = new ArrayList<>(options.size());
-            for (CompletionSuggestion.Entry.Option option : options) {
-                // 4.3.获取option中的text，即补全的词条
-                list.add(option.getText().toString());
-            }
-            return list;
+            return handleSuggestions(response);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     @Override
-    public void insertById(Long id) {
-        try {
-            Hotel hotel = getById(id);
-            HotelDoc hotelDoc = new HotelDoc(hotel);
-            // 1.准备request
-            IndexRequest request = new IndexRequest("hotel").id(hotelDoc.getId().toString());
-            // 2.准备DSL
-            ObjectMapper mapper = new ObjectMapper();
-            request.source(mapper.writeValueAsString(hotelDoc), XContentType.JSON);
-            // 3.发送请求
-            restHighLevelClient.index(request, RequestOptions.DEFAULT);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public CompletableFuture<List<String>> getSuggestionsAsync(String key) {
+        // 本地补全索引是纯内存操作，直接返回
+        if (suggestionIndex.isReady()) {
+            return CompletableFuture.completedFuture(suggestionIndex.suggest(key));
+        }
+        return coalesceAsync(suggestionFlight, String.valueOf(key),
+            () -> asyncSearchClient.search(buildSuggestRequest(key), this::handleSuggestions));
+    }
+
+    // 合并相同的并发请求，关闭时直接查询
+    private <K, V> V coalesce(SingleFlight<K, V> flight, K key, Supplier<V> loader) {
+        return searchProperties.isCoalesceEnabled() ? flight.execute(key, loader) : loader.get();
+    }
+
+    private <K, V> CompletableFuture<V> coalesceAsync(SingleFlight<K, V> flight, K key,
+                                                      Supplier<CompletableFuture<V>> loader) {
+        return searchProperties.isCoalesceEnabled() ? flight.executeAsync(key, loader) : loader.get();
+    }
+
+    private SearchRequest buildSuggestRequest(String key) {
+        // 1.准备request
+        SearchRequest request = new SearchRequest(HotelConstants.HOTEL_INDEX);
+        // 2.准备DSL
+        request.source().suggest(new SuggestBuilder().addSuggestion(
+            "suggestions", SuggestBuilders.completionSuggestion("suggestion")
+                .prefix(key).skipDuplicates(true).size(10)
+        ));
+        return request;
+    }
+
+    private List<String> handleSuggestions(SearchResponse response) {
+        // 4.1.根据名称获取补全结果
+        CompletionSuggestion suggestions = response.getSuggest().getSuggestion("suggestions");
+        // 4.2.获取options进行遍历
+        List<CompletionSuggestion.Entry.Option> options = suggestions.getOptions();
+        List<String> list = new ArrayList<>(options.size());
+        for (CompletionSuggestion.Entry.Option option : options) {
+            // 4.3.获取option中的text，即补全的词条
+            list.add(option.getText().toString());
+        }
+        return list;
+    }
+
+    @Override
+    public void insertById(Long id, Long version) {
+        syncOne(new HotelChange(id, false, version));
+    }
+
+    @Override
+    public void deleteById(Long id, Long version) {
+        syncOne(new HotelChange(id, true, version));
+    }
+
+    private void syncOne(HotelChange change) {
+        Map<Long, String> failures = bulkSync(Collections.singletonList(change));
+        if (!failures.isEmpty()) {
+            throw new RuntimeException(failures.get(change.getId()));
         }
     }
 
     @Override
-    public void deleteById(Long id) {
+    public Map<Long, String> bulkSync(List<HotelChange> changes) {
         try {
-            // 1.准备request
-            DeleteRequest request = new DeleteRequest("hotel", id.toString());
-            // 2.发送请求
-            restHighLevelClient.delete(request, RequestOptions.DEFAULT);
+            // 1.一次查出所有需要新增或修改的酒店
+            Set<Long> ids = new HashSet<>();
+            for (HotelChange change : changes) {
+                if (!change.isDelete()) {
+                    ids.add(change.getId());
+                }
+            }
+            Map<Long, Hotel> hotelMap = new HashMap<>(ids.size() * 2);
+            if (!ids.isEmpty()) {
+                for (Hotel hotel : listByIds(ids)) {
+                    hotelMap.put(hotel.getId(), hotel);
+                }
+            }
+            // 2.按消息顺序组装Bulk请求，同一个id的操作保持先后顺序
+            // 重建索引期间会同时写入正在构建的新索引
+            // 带版本号的变更使用外部版本号，比索引中旧的写入会被ES拒绝，两个队列之间乱序或重试都不会覆盖新数据
+            List<String> indices = indexWriteTargets.get();
+            // 按city路由的索引要知道每个酒店现有的文档在哪些路由上，换了城市时删掉旧路由上的文档
+            Set<String> routed = new HashSet<>();
+            for (String index : indices) {
+                if (cityRouting.isRouted(index)) {
+                    routed.add(index);
+                }
+            }
+            Map<String, Map<Long, Map<String, HotelDoc>>> routedDocs = routed.isEmpty()
+                ? Collections.emptyMap() : getRoutedDocs(changes, routed);
+            BulkRequest request = new BulkRequest();
+            Map<Long, HotelDoc> after = new HashMap<>();
+            Map<Long, Long> fingerprints = new HashMap<>();
+            // 索引内容会发生变化的酒店，detect_noop的结果要等响应回来才知道
+            Set<Long> modified = new HashSet<>();
+            List<HotelChange> sent = new ArrayList<>(changes.size());
+            Map<Long, String> failures = new HashMap<>();
+            for (HotelChange change : changes) {
+                Hotel hotel = change.isDelete() ? null : hotelMap.get(change.getId());
+                HotelDoc hotelDoc;
+                String source;
+                try {
+                    hotelDoc = hotel == null ? null : new HotelDoc(hotel);
+                    source = hotelDoc == null ? null : hotelDoc.toSource();
+                } catch (RuntimeException | IOException e) {
+                    // 一行数据有问题时只让这个酒店失败，批次中的其他酒店照常写入
+                    failures.put(change.getId(), "转换为文档失败：" + e);
+                    docFingerprints.remove(change.getId());
+                    continue;
+                }
+                long fingerprint = source == null ? 0 : DocFingerprints.of(source);
+                // 本进程的指纹只在只有一个消费者时可信，否则其他实例可能已经写入了别的内容
+                if (source != null && indexerProperties.isSkipUnchanged()
+                    && docFingerprints.matches(change.getId(), fingerprint)) {
+                    // 和上次写入的内容相同，不需要写
+                    skippedWrites.increment();
+                    continue;
+                }
+                sent.add(change);
+                if (hotelDoc != null) {
+                    after.put(hotelDoc.getId(), hotelDoc);
+                    fingerprints.put(hotelDoc.getId(), fingerprint);
+                }
+                // 不能确定索引中的内容时用detect_noop的局部更新，内容相同时ES不会生成新文档
+                // source中带着值为null的字段，数据库中变成null的字段在合并时也会被覆盖
+                // update不支持外部版本号，带版本号的变更仍然整体写入
+                Long version = change.getVersion();
+                boolean detectNoop = source != null && version == null
+                    && !(indexerProperties.isSkipUnchanged() && docFingerprints.contains(change.getId()));
+                if (!detectNoop) {
+                    modified.add(change.getId());
+                }
+                indexWriteTargets.touch(change.getId());
+                for (String index : indices) {
+                    String id = change.getId().toString();
+                    String routing = null;
+                    if (routed.contains(index)) {
+                        // 不在当前路由上的文档都删掉，酒店已经删除时删掉所有路由上的文档
+                        routing = hotelDoc == null ? null : CityRouting.routingOf(hotelDoc);
+                        Map<String, HotelDoc> copies = routedDocs.get(index).get(change.getId());
+                        for (String old : copies == null ? Collections.<String>emptySet() : copies.keySet()) {
+                            if (!old.equals(routing)) {
+                                request.add(deleteRequest(index, id, version).routing(old));
+                            }
+                        }
+                        if (hotel == null) {
+                            continue;
+                        }
+                    }
+                    if (hotel == null) {
+                        // 删除消息，或者数据库中已经没有这个酒店了
+                        request.add(deleteRequest(index, id, version));
+                    } else if (detectNoop) {
+                        request.add(new UpdateRequest(index, id).doc(source, XContentType.JSON)
+                            .docAsUpsert(true).detectNoop(true).routing(routing));
+                    } else {
+                        IndexRequest indexRequest = new IndexRequest(index).id(id).routing(routing)
+                            .source(source, XContentType.JSON);
+                        if (version != null) {
+                            indexRequest.version(version).versionType(VersionType.EXTERNAL);
+                        }
+                        request.add(indexRequest);
+                    }
+                }
+            }
+            if (sent.isEmpty()) {
+                return failures;
+            }
+            // 变更前的酒店，用于清理搜索缓存，别名按city路由时已经查出来了，换过城市的酒店可能有多份
+            Map<Long, Collection<HotelDoc>> before;
+            if (!searchResultCache.isEnabled() && !geoCellCache.isEnabled()) {
+                before = Collections.emptyMap();
+            } else if (routed.contains(HotelConstants.HOTEL_INDEX)) {
+                before = new HashMap<>();
+                for (Map.Entry<Long, Map<String, HotelDoc>> copies
+                    : routedDocs.get(HotelConstants.HOTEL_INDEX).entrySet()) {
+                    before.put(copies.getKey(), copies.getValue().values());
+                }
+            } else {
+                before = getIndexedDocs(sent);
+            }
+            // 3.发送请求，路由索引中本来就没有要删除的酒店时没有请求可发
+            BulkItemResponse[] items = request.numberOfActions() == 0 ? new BulkItemResponse[0]
+                : restHighLevelClient.bulk(request, RequestOptions.DEFAULT).getItems();
+            // 4.收集失败的条目，记录写入后的指纹
+            for (int i = 0; i < items.length; i++) {
+                BulkItemResponse item = items[i];
+                Long id = Long.valueOf(item.getId());
+                if (item.isFailed() && item.getFailure().getStatus() == RestStatus.CONFLICT
+                    && request.requests().get(i).versionType() == VersionType.EXTERNAL) {
+                    // 索引中已经是更新的版本，这次写入已经过时，不算失败
+                    // 不带外部版本号的写入冲突是真正的并发冲突，和其他失败一样交给调用方重试
+                    staleWrites.increment();
+                    modified.remove(id);
+                } else if (item.isFailed()) {
+                    failures.put(id, item.getFailureMessage());
+                    docFingerprints.remove(id);
+                    if (item.getFailureMessage().contains("routing_missing_exception")) {
+                        // 别名已经切换到按city路由的索引，下次重试时按新的方式写入
+                        cityRouting.refresh();
+                    }
+                } else if (item.getOpType() == DocWriteRequest.OpType.DELETE) {
+                    docFingerprints.remove(id);
+                } else {
+                    docFingerprints.put(id, fingerprints.get(id));
+                    if (item.getResponse().getResult() == DocWriteResponse.Result.NOOP) {
+                        noopWrites.increment();
+                    } else {
+                        modified.add(id);
+                    }
+                }
+            }
+            // 5.清理受影响的搜索缓存、更新补全索引，失败或没有改变内容的变更不需要处理
+            List<HotelDoc> states = new ArrayList<>(before.size() + after.size());
+            Map<Long, HotelDoc> applied = new HashMap<>();
+            for (HotelChange change : sent) {
+                if (modified.contains(change.getId()) && !failures.containsKey(change.getId())) {
+                    states.addAll(before.getOrDefault(change.getId(), Collections.emptyList()));
+                    addIfPresent(states, after.get(change.getId()));
+                    applied.put(change.getId(), change.isDelete() ? null : after.get(change.getId()));
+                }
+                // 记住写入的路由，刷新之前搜索不到，下次换城市时靠它找到旧的文档
+                if (!routed.isEmpty()) {
+                    HotelDoc state = after.get(change.getId());
+                    if (state == null || failures.containsKey(change.getId())) {
+                        cityRouting.forget(change.getId());
+                    } else {
+                        cityRouting.remember(filterState(state));
+                    }
+                }
+            }
+            searchResultCache.invalidate(states);
+            geoCellCache.invalidate(states);
+            suggestionIndex.update(applied);
+            return failures;
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static DeleteRequest deleteRequest(String index, String id, Long version) {
+        DeleteRequest deleteRequest = new DeleteRequest(index, id);
+        if (version != null) {
+            deleteRequest.version(version).versionType(VersionType.EXTERNAL);
+        }
+        return deleteRequest;
+    }
+
+    /**
+     * 在按city路由的索引中查找这些酒店现有的文档，不知道路由时get不到，只能搜索所有分片
+     * @return 索引 -> 酒店id -> 路由 -> 文档中过滤条件用到的字段
+     */
+    private Map<String, Map<Long, Map<String, HotelDoc>>> getRoutedDocs(List<HotelChange> changes,
+                                                                        Set<String> indices) throws IOException {
+        Set<String> ids = new HashSet<>();
+        for (HotelChange change : changes) {
+            ids.add(change.getId().toString());
+        }
+        Map<String, Map<Long, Map<String, HotelDoc>>> docs = new HashMap<>();
+        for (String index : indices) {
+            docs.put(index, new HashMap<>());
+        }
+        // 换过城市还没删掉的文档也要查出来，每个酒店留出一份余量
+        SearchRequest request = new SearchRequest(indices.toArray(new String[0]));
+        request.source().query(QueryBuilders.idsQuery().addIds(ids.toArray(new String[0])))
+            .size(ids.size() * indices.size() * 2)
+            .trackTotalHits(false)
+            .fetchSource(FILTER_FIELDS, null);
+        for (SearchHit hit : restHighLevelClient.search(request, RequestOptions.DEFAULT).getHits().getHits()) {
+            // 通过别名查到的文档返回的是实际的索引名
+            String index = indices.contains(hit.getIndex()) ? hit.getIndex() : HotelConstants.HOTEL_INDEX;
+            HotelDoc hotelDoc = toFilterDoc(hit.getId(), hit.getSourceAsMap());
+            docs.get(index).computeIfAbsent(hotelDoc.getId(), k -> new HashMap<>())
+                .put(CityRouting.routingOf(hotelDoc), hotelDoc);
+        }
+        // 加上刷新之前还搜索不到的最近写入
+        for (HotelChange change : changes) {
+            HotelDoc recent = cityRouting.recent(change.getId());
+            if (recent == null) {
+                continue;
+            }
+            for (Map<Long, Map<String, HotelDoc>> indexDocs : docs.values()) {
+                indexDocs.computeIfAbsent(change.getId(), k -> new HashMap<>())
+                    .putIfAbsent(CityRouting.routingOf(recent), recent);
+            }
+        }
+        return docs;
+    }
+
+    // 查询索引中现有的酒店，只取过滤条件用到的字段
+    private Map<Long, Collection<HotelDoc>> getIndexedDocs(List<HotelChange> changes) throws IOException {
+        MultiGetRequest request = new MultiGetRequest();
+        FetchSourceContext fetchSource = new FetchSourceContext(true, FILTER_FIELDS, null);
+        Set<Long> ids = new HashSet<>();
+        for (HotelChange change : changes) {
+            if (ids.add(change.getId())) {
+                request.add(new MultiGetRequest.Item(HotelConstants.HOTEL_INDEX, change.getId().toString())
+                    .fetchSourceContext(fetchSource));
+            }
+        }
+        MultiGetResponse response = restHighLevelClient.mget(request, RequestOptions.DEFAULT);
+        Map<Long, Collection<HotelDoc>> docs = new HashMap<>(ids.size() * 2);
+        for (MultiGetItemResponse item : response.getResponses()) {
+            if (item.isFailed() || !item.getResponse().isExists()) {
+                continue;
+            }
+            HotelDoc hotelDoc = toFilterDoc(item.getId(), item.getResponse().getSourceAsMap());
+            docs.put(hotelDoc.getId(), Collections.singletonList(hotelDoc));
+        }
+        return docs;
+    }
+
+    private static HotelDoc toFilterDoc(String id, Map<String, Object> source) {
+        HotelDoc hotelDoc = new HotelDoc();
+        hotelDoc.setId(Long.valueOf(id));
+        hotelDoc.setCity((String) source.get("city"));
+        hotelDoc.setBrand((String) source.get("brand"));
+        hotelDoc.setStarName((String) source.get("starName"));
+        Object price = source.get("price");
+        hotelDoc.setPrice(price == null ? null : ((Number) price).intValue());
+        return hotelDoc;
+    }
+
+    // 只保留过滤条件用到的字段
+    private static HotelDoc filterState(HotelDoc hotelDoc) {
+        HotelDoc state = new HotelDoc();
+        state.setId(hotelDoc.getId());
+        state.setCity(hotelDoc.getCity());
+        state.setBrand(hotelDoc.getBrand());
+        state.setStarName(hotelDoc.getStarName());
+        state.setPrice(hotelDoc.getPrice());
+        return state;
+    }
+
+    private static void addIfPresent(List<HotelDoc> list, HotelDoc hotelDoc) {
+        if (hotelDoc != null) {
+            list.add(hotelDoc);
+        }
+    }
+
     private List<String> getAggByName(Aggregations aggregations, String name) {
         Terms brandAgg = aggregations.get(name);
         List<? extends Terms.Bucket> brandBuckets = brandAgg.getBuckets();
@@ -196,6 +857,8 @@ public class HotelService extends ServiceImpl<HotelMapper, Hotel> implements IHo
         // 2.3.条件过滤
         if (!StringUtils.isEmpty(params.getCity())) {
             query.filter(QueryBuilders.termQuery("city", params.getCity()));
+            // 索引按city路由时，同城的酒店都在同一个分片上，只查询这一个分片
+            request.routing(cityRouting.searchRouting(params.getCity()));
         }
         if (!StringUtils.isEmpty(params.getBrand())) {
             query.filter(QueryBuilders.termQuery("brand", params.getBrand()));
@@ -228,21 +891,29 @@ public class HotelService extends ServiceImpl<HotelMapper, Hotel> implements IHo
     }
 
     // 解析响应
-    private PageResult handleResponse(SearchResponse searchResponse) throws JsonProcessingException {
+    private PageResult handleResponse(SearchResponse searchResponse, RequestParams params) throws IOException {
         SearchHit[] hits = searchResponse.getHits().getHits();
-        long total = searchResponse.getHits().getTotalHits().value;
-        List<HotelDoc> hotels = new ArrayList<>();
-        for (SearchHit hit : hits) {
-            HotelDoc hotelDoc = new ObjectMapper().readValue(hit.getSourceAsString(), HotelDoc.class);
-            // 获取排序值，即距离
-            Object[] sortValues = hit.getSortValues();
-            if (!ObjectUtils.isEmpty(sortValues)) {
-                Object sortValue = sortValues[0];
-                hotelDoc.setDistance(sortValue);
-            }
-            hotels.add(hotelDoc);
-        }
-        return new PageResult(total, hotels);
+        // 不统计总数时多查了一条
+        boolean hasMore = hits.length > params.getSize();
+        if (hasMore) {
+            hits = Arrays.copyOf(hits, params.getSize());
+        }
+        // 按距离排序时，第一个排序值就是距离
+        boolean geoSort = !StringUtils.isEmpty(params.getLocation());
+        List<HotelDoc> hotels = HitDecoder.decode(hits, geoSort);
+        TotalHits totalHits = searchResponse.getHits().getTotalHits();
+        PageResult result = new PageResult(totalHits == null ? null : totalHits.value, hotels);
+        if (totalHits == null) {
+            result.setHasMore(hasMore);
+        } else if (totalHits.relation == TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO) {
+            result.setTotalApprox(true);
+        }
+        // 满页时返回下一页的游标
+        if (hits.length > 0 && hits.length == params.getSize()) {
+            String sort = SearchCursor.sortOf(params.getLocation());
+            result.setCursor(SearchCursor.encode(sort, hits[hits.length - 1].getSortValues()));
+        }
+        return result;
     }
 
 }
@@ -0,0 +1,180 @@
+package cn.itcast.hotel.service.impl;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直通模式：把ES的搜索响应流式地改写成PageResult格式的JSON，
+ * 每个hit的_source按token原样复制，不解析成对象，只在按距离排序时追加distance字段
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+public final class RawSearchWriter {
+
+    // 输出流由调用方负责关闭
+    private static final JsonFactory FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    /**
+     * ES只返回需要的部分
+     */
+    public static final Map<String, String> PARAMETERS =
+        Collections.singletonMap("filter_path", "hits.total,hits.hits._source,hits.hits.sort");
+
+    private RawSearchWriter() {
+    }
+
+    /**
+     * @param withDistance 第一个排序值是否为距离，是则作为distance写入每个酒店
+     * @param sort         本次搜索的排序方式，写入下一页的游标
+     * @param size         每页数量，满页时写入下一页的游标；不统计总数时ES会多返回一条，用来判断是否还有下一页
+     */
+    public static void write(InputStream in, OutputStream out, boolean withDistance, String sort, int size)
+        throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in);
+             JsonGenerator generator = FACTORY.createGenerator(out)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("ES响应格式错误");
+            }
+            generator.writeStartObject();
+            boolean hotelsWritten = false;
+            boolean totalWritten = false;
+            boolean hasMore = false;
+            int count = 0;
+            Object[] lastSort = null;
+            // 1.响应为 {"hits":{"total":{"value":N,"relation":"eq"},"hits":[{"_source":{...},"sort":[...]}]}}
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                parser.nextToken();
+                if (!"hits".equals(name)) {
+                    parser.skipChildren();
+                    continue;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if ("total".equals(field)) {
+                        copyTotal(parser, generator);
+                        totalWritten = true;
+                    } else if ("hits".equals(field)) {
+                        // 2.逐个复制酒店，多出的一条只用来判断是否还有下一页
+                        generator.writeArrayFieldStart("hotels");
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            if (count == size) {
+                                hasMore = true;
+                                parser.skipChildren();
+                                continue;
+                            }
+                            lastSort = copyHit(parser, generator, withDistance);
+                            count++;
+                        }
+                        generator.writeEndArray();
+                        hotelsWritten = true;
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            }
+            // 没有命中时ES不返回hits数组
+            if (!hotelsWritten) {
+                generator.writeArrayFieldStart("hotels");
+                generator.writeEndArray();
+            }
+            if (!totalWritten) {
+                generator.writeBooleanField("hasMore", hasMore);
+            }
+            // 3.满页时返回下一页的游标
+            if (count > 0 && count == size && lastSort != null) {
+                generator.writeStringField("cursor", SearchCursor.encode(sort, lastSort));
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    // 总数为 {"value":N,"relation":"eq|gte"}，relation为gte时total只是下限
+    private static void copyTotal(JsonParser parser, JsonGenerator generator) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            generator.writeNumberField("total", parser.getLongValue());
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("value".equals(field)) {
+                generator.writeNumberField("total", parser.getLongValue());
+            } else if ("relation".equals(field) && "gte".equals(parser.getText())) {
+                generator.writeBooleanField("totalApprox", true);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    // 复制一个hit的_source，返回它的排序值
+    private static Object[] copyHit(JsonParser parser, JsonGenerator generator, boolean withDistance)
+        throws IOException {
+        TokenBuffer source = null;
+        Object[] sort = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("_source".equals(field)) {
+                if (withDistance) {
+                    // sort在_source之后，先缓存_source的token，读到距离后再输出
+                    source = new TokenBuffer(parser);
+                    source.copyCurrentStructure(parser);
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            } else if ("sort".equals(field)) {
+                sort = readSort(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (source != null) {
+            generator.writeStartObject();
+            try (JsonParser sourceParser = source.asParser()) {
+                sourceParser.nextToken();
+                while (sourceParser.nextToken() == JsonToken.FIELD_NAME) {
+                    generator.copyCurrentStructure(sourceParser);
+                }
+            }
+            if (sort != null && sort.length > 0 && sort[0] instanceof Number) {
+                generator.writeNumberField("distance", ((Number) sort[0]).doubleValue());
+            }
+            generator.writeEndObject();
+        }
+        return sort;
+    }
+
+    private static Object[] readSort(JsonParser parser) throws IOException {
+        List<Object> values = new ArrayList<>(2);
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == JsonToken.VALUE_NUMBER_INT) {
+                values.add(parser.getLongValue());
+            } else if (token == JsonToken.VALUE_NUMBER_FLOAT) {
+                values.add(parser.getDoubleValue());
+            } else if (token == JsonToken.VALUE_NULL) {
+                values.add(null);
+            } else {
+                values.add(parser.getText());
+            }
+        }
+        return values.toArray();
+    }
+
+}
@@ -0,0 +1,114 @@
+package cn.itcast.hotel.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.elasticsearch.common.geo.GeoPoint;
+import org.springframework.util.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页的游标，内容是上一页最后一条数据的排序值，对客户端不透明。
+ * 排序值有两种来源：ES返回的sort，以及附近酒店候选集缓存在本地算出的[距离, id]。
+ * 本地距离按_source中的坐标计算，ES按量化后的坐标计算，两者会有微小差别，
+ * 因此本地生成的游标带有local标记，不能直接交给ES的search_after。
+ * 排序值只在同样的排序方式下有意义，游标中记录了生成它的排序方式(按相关度，或者按到某个坐标的距离)，
+ * 翻页时排序方式不一致的游标直接拒绝，由调用方返回400
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public final class SearchCursor {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String SCORE = "score";
+    private static final String GEO_PREFIX = "geo:";
+
+    // 生成游标的排序方式，见sortOf
+    private String sort;
+    // 上一页最后一条数据的排序值
+    private Object[] after;
+    // 是否由附近酒店候选集缓存生成
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private boolean local;
+
+    /**
+     * 搜索的排序方式：没有坐标时按相关度，有坐标时按到该坐标的距离，坐标规范化后再比较
+     */
+    public static String sortOf(String location) {
+        if (!StringUtils.hasText(location)) {
+            return SCORE;
+        }
+        GeoPoint point = new GeoPoint(location);
+        return GEO_PREFIX + point.lat() + "," + point.lon();
+    }
+
+    /**
+     * ES返回的排序值生成的游标
+     * @param sort 本次搜索的排序方式，见sortOf
+     */
+    public static String encode(String sort, Object[] sortValues) {
+        return encode(new SearchCursor(sort, sortValues, false));
+    }
+
+    /**
+     * 附近酒店候选集缓存本地排序生成的游标
+     */
+    public static String encodeLocal(String sort, Object[] sortValues) {
+        return encode(new SearchCursor(sort, sortValues, true));
+    }
+
+    private static String encode(SearchCursor cursor) {
+        try {
+            byte[] json = MAPPER.writeValueAsBytes(cursor);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static SearchCursor decode(String cursor) {
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor);
+            SearchCursor decoded = MAPPER.readValue(new String(json, StandardCharsets.UTF_8), SearchCursor.class);
+            if (decoded.getAfter() == null || decoded.getAfter().length == 0) {
+                throw new IllegalArgumentException("无效的cursor：" + cursor);
+            }
+            return decoded;
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            throw new IllegalArgumentException("无效的cursor：" + cursor, e);
+        }
+    }
+
+    /**
+     * 解码并检查排序方式
+     * @param sort 本次搜索的排序方式，与生成游标时不一致时抛出IllegalArgumentException
+     */
+    public static SearchCursor decode(String cursor, String sort) {
+        SearchCursor decoded = decode(cursor);
+        if (!sort.equals(decoded.getSort())) {
+            throw new IllegalArgumentException("cursor与本次搜索的排序方式不一致，请从第一页重新搜索");
+        }
+        return decoded;
+    }
+
+    /**
+     * 交给ES的search_after，本地生成的游标要先换成ES的排序值
+     */
+    public Object[] searchAfter() {
+        if (local) {
+            throw new IllegalArgumentException("该cursor只能用于按距离排序的附近酒店搜索");
+        }
+        return after;
+    }
+
+}
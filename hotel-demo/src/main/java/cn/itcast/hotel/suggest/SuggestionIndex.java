@@ -0,0 +1,303 @@
+package cn.itcast.hotel.suggest;
+
+import cn.itcast.hotel.config.SuggestionProperties;
+import cn.itcast.hotel.mapper.HotelMapper;
+import cn.itcast.hotel.pojo.Hotel;
+import cn.itcast.hotel.pojo.HotelDoc;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.lucene.search.suggest.InputIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.WFSTCompletionLookup;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地自动补全索引。
+ * 补全词条就是HotelDoc中的suggestion(品牌加拆分后的商圈)，数量少且很少变化，
+ * 因此在启动时从数据库加载，构建成带权重(包含该词条的酒店数)的FST，不再每次按键都请求ES。
+ * FST不可变，酒店变更时先更新词条计数，再延迟rebuildDelay重新构建并整体替换，期间的多批变更只重建一次。
+ * 加载期间收到的变更先暂存，加载完成后再应用，不会被加载读到的旧数据覆盖，也不会丢失
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@Slf4j
+@Component
+public class SuggestionIndex {
+
+    private final HotelMapper hotelMapper;
+    private final SuggestionProperties properties;
+
+    // 以下三个map只在持有this锁时修改
+    // 每个酒店的补全词条，用于变更时扣减旧词条
+    private final Map<Long, List<String>> hotelTerms = new HashMap<>();
+    // 小写词条 -> 包含它的酒店数
+    private final Map<String, Integer> termCounts = new HashMap<>();
+    // 小写词条 -> 展示用的原始词条
+    private final Map<String, String> displayTerms = new HashMap<>();
+
+    // 是否已经安排了重建，只在持有this锁时访问
+    private boolean rebuildScheduled;
+
+    private final Object pendingLock = new Object();
+    // 加载期间收到的变更，为null表示不在加载中，只在持有pendingLock时访问
+    private Map<Long, HotelDoc> pending;
+
+    private volatile Snapshot snapshot;
+    private final ScheduledExecutorService rebuilder =
+        Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "suggestion-rebuilder"));
+
+    public SuggestionIndex(HotelMapper hotelMapper, SuggestionProperties properties) {
+        this.hotelMapper = hotelMapper;
+        this.properties = properties;
+    }
+
+    @PreDestroy
+    public void stop() {
+        rebuilder.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!properties.isLocalEnabled()) {
+            return;
+        }
+        synchronized (pendingLock) {
+            pending = new HashMap<>();
+        }
+        try {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                int batchSize = properties.getLoadBatchSize();
+                long afterId = Long.MIN_VALUE;
+                while (true) {
+                    List<Hotel> hotels = hotelMapper.selectAfterId(afterId, Long.MAX_VALUE, batchSize);
+                    for (Hotel hotel : hotels) {
+                        put(hotel.getId(), new HotelDoc(hotel).getSuggestion());
+                    }
+                    if (hotels.size() < batchSize) {
+                        break;
+                    }
+                    afterId = hotels.get(hotels.size() - 1).getId();
+                }
+                // 应用加载期间收到的变更，持有this锁时停止暂存，之后的变更会等到这里完成再应用
+                Map<Long, HotelDoc> buffered;
+                synchronized (pendingLock) {
+                    buffered = pending;
+                    pending = null;
+                }
+                for (Map.Entry<Long, HotelDoc> entry : buffered.entrySet()) {
+                    apply(entry.getKey(), entry.getValue());
+                }
+                rebuild();
+                log.info("自动补全索引加载完成，{}个酒店，{}个词条，加载期间变更{}个，耗时{}ms",
+                    hotelTerms.size(), termCounts.size(), buffered.size(), System.currentTimeMillis() - start);
+            }
+        } catch (Exception e) {
+            // 加载失败时继续使用ES补全
+            log.error("自动补全索引加载失败", e);
+        } finally {
+            synchronized (pendingLock) {
+                pending = null;
+            }
+        }
+    }
+
+    /**
+     * 索引是否可用，不可用时调用方应退回ES
+     */
+    public boolean isReady() {
+        return properties.isLocalEnabled() && snapshot != null;
+    }
+
+    /**
+     * 按前缀查询补全词条，词条去重，按包含该词条的酒店数降序
+     */
+    public List<String> suggest(String key) {
+        Snapshot current = snapshot;
+        if (current == null || key == null) {
+            return Collections.emptyList();
+        }
+        try {
+            List<Lookup.LookupResult> results =
+                current.lookup.lookup(key.toLowerCase(Locale.ROOT), false, properties.getSize());
+            List<String> list = new ArrayList<>(results.size());
+            for (Lookup.LookupResult result : results) {
+                String term = result.key.toString();
+                list.add(current.displayTerms.getOrDefault(term, term));
+            }
+            return list;
+        } catch (IOException | RuntimeException e) {
+            log.warn("自动补全查询失败，key={}", key, e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * 应用一批酒店变更，加载期间先暂存，词条有变化时延迟重建
+     * @param changes 酒店id -> 变更后的文档，删除时为null
+     */
+    public void update(Map<Long, HotelDoc> changes) {
+        if (!properties.isLocalEnabled() || changes.isEmpty()) {
+            return;
+        }
+        synchronized (pendingLock) {
+            if (pending != null) {
+                // 同一个酒店只保留最后一次变更
+                pending.putAll(changes);
+                return;
+            }
+        }
+        synchronized (this) {
+            // 还没有开始加载或者加载失败，加载时会读到最新的数据。
+            // 停止暂存之后、加载完成之前的变更会在这里等到加载完成
+            if (snapshot == null) {
+                return;
+            }
+            boolean changed = false;
+            for (Map.Entry<Long, HotelDoc> entry : changes.entrySet()) {
+                changed |= apply(entry.getKey(), entry.getValue());
+            }
+            if (changed && !rebuildScheduled) {
+                rebuildScheduled = true;
+                rebuilder.schedule(this::scheduledRebuild,
+                    properties.getRebuildDelay().toMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private synchronized void scheduledRebuild() {
+        rebuildScheduled = false;
+        try {
+            rebuild();
+        } catch (IOException | RuntimeException e) {
+            log.error("自动补全索引重建失败", e);
+        }
+    }
+
+    /**
+     * @return 酒店的词条是否有变化
+     */
+    private boolean apply(Long id, HotelDoc hotelDoc) {
+        List<String> terms = hotelDoc == null ? null : hotelDoc.getSuggestion();
+        if (terms == null ? !hotelTerms.containsKey(id) : terms.equals(hotelTerms.get(id))) {
+            return false;
+        }
+        put(id, terms);
+        return true;
+    }
+
+    private void put(Long id, List<String> terms) {
+        List<String> old = terms == null ? hotelTerms.remove(id) : hotelTerms.put(id, terms);
+        if (old != null) {
+            for (String term : distinct(old)) {
+                String lower = term.toLowerCase(Locale.ROOT);
+                Integer count = termCounts.get(lower);
+                if (count == null || count <= 1) {
+                    termCounts.remove(lower);
+                    displayTerms.remove(lower);
+                } else {
+                    termCounts.put(lower, count - 1);
+                }
+            }
+        }
+        if (terms != null) {
+            for (String term : distinct(terms)) {
+                String lower = term.toLowerCase(Locale.ROOT);
+                termCounts.merge(lower, 1, Integer::sum);
+                displayTerms.putIfAbsent(lower, term);
+            }
+        }
+    }
+
+    // 同一个酒店的重复词条只计一次，空词条不参与补全
+    private static Set<String> distinct(List<String> terms) {
+        Set<String> set = new LinkedHashSet<>(terms.size() * 2);
+        for (String term : terms) {
+            if (term != null && !term.trim().isEmpty()) {
+                set.add(term.trim());
+            }
+        }
+        return set;
+    }
+
+    private void rebuild() throws IOException {
+        WFSTCompletionLookup lookup = new WFSTCompletionLookup(new ByteBuffersDirectory(), "suggestion");
+        lookup.build(new TermIterator(termCounts.entrySet().iterator()));
+        snapshot = new Snapshot(lookup, new HashMap<>(displayTerms));
+    }
+
+    private static class Snapshot {
+        private final WFSTCompletionLookup lookup;
+        private final Map<String, String> displayTerms;
+
+        Snapshot(WFSTCompletionLookup lookup, Map<String, String> displayTerms) {
+            this.lookup = lookup;
+            this.displayTerms = displayTerms;
+        }
+    }
+
+    private static class TermIterator implements InputIterator {
+        private final Iterator<Map.Entry<String, Integer>> iterator;
+        private long weight;
+
+        TermIterator(Iterator<Map.Entry<String, Integer>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public BytesRef next() {
+            if (!iterator.hasNext()) {
+                return null;
+            }
+            Map.Entry<String, Integer> entry = iterator.next();
+            weight = entry.getValue();
+            return new BytesRef(entry.getKey());
+        }
+
+        @Override
+        public long weight() {
+            return weight;
+        }
+
+        @Override
+        public BytesRef payload() {
+            return null;
+        }
+
+        @Override
+        public boolean hasPayloads() {
+            return false;
+        }
+
+        @Override
+        public Set<BytesRef> contexts() {
+            return null;
+        }
+
+        @Override
+        public boolean hasContexts() {
+            return false;
+        }
+    }
+
+}
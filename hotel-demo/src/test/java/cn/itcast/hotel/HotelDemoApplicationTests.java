@@ -1,9 +1,14 @@
 package cn.itcast.hotel;
 
+import cn.itcast.hotel.constant.HotelConstants;
+import cn.itcast.hotel.index.HotelIndexDefinitions;
+import cn.itcast.hotel.index.HotelReindexJob;
 import cn.itcast.hotel.pojo.Hotel;
 import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.ReindexResult;
 import cn.itcast.hotel.service.IHotelService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.action.admin.indices.alias.get.GetAliasesRequest;
 import org.elasticsearch.action.bulk.BulkItemResponse;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
@@ -12,6 +17,7 @@ import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.client.RestHighLevelClient;
+import org.elasticsearch.client.core.CountRequest;
 import org.elasticsearch.client.indices.CreateIndexRequest;
 import org.elasticsearch.client.indices.CreateIndexResponse;
 import org.elasticsearch.common.xcontent.XContentType;
@@ -24,9 +30,12 @@ import org.springframework.boot.test.context.SpringBootTest;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
-import static cn.itcast.hotel.constant.HotelConstants.MAPPING_TEMPLATE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 class HotelDemoApplicationTests {
@@ -35,13 +44,18 @@ class HotelDemoApplicationTests {
     private RestHighLevelClient restHighLevelClient;
     @Autowired
     private IHotelService hotelService;
+    @Autowired
+    private HotelReindexJob hotelReindexJob;
+    @Autowired
+    private HotelIndexDefinitions hotelIndexDefinitions;
     private ObjectMapper mapper = new ObjectMapper();
 
     @Test
     public void createHotelIndex () throws IOException {
         CreateIndexRequest createIndexRequest = new CreateIndexRequest("hotel");
-        // 指定JSON结构(在Kibana中书写好后拿过来)和数据类型
-        createIndexRequest.source(MAPPING_TEMPLATE , XContentType.JSON);
+        // 指定mapping和settings
+        createIndexRequest.mapping(hotelIndexDefinitions.current().mapping());
+        createIndexRequest.settings(hotelIndexDefinitions.current().getSettings());
         // 参数为创建索引的请求对象和请求的配置对象
         CreateIndexResponse createIndexResponse =
             restHighLevelClient.indices().create(createIndexRequest, RequestOptions.DEFAULT);
@@ -72,6 +86,24 @@ class HotelDemoApplicationTests {
         }
     }
 
+    @Test
+    public void testReindex() throws IOException {
+        // 创建新版本索引，并行导入后把hotel别名切换过去
+        ReindexResult result = hotelReindexJob.run();
+        System.out.println(result);
+        // 1.新索引按版本命名，导入了数据库中的全部酒店
+        assertTrue(result.getIndex().startsWith(HotelConstants.HOTEL_INDEX_PREFIX));
+        assertEquals(hotelService.count(), result.getTotal().intValue());
+        // 2.hotel别名只指向新索引
+        Set<String> indices = restHighLevelClient.indices()
+            .getAlias(new GetAliasesRequest(HotelConstants.HOTEL_INDEX), RequestOptions.DEFAULT).getAliases().keySet();
+        assertEquals(Collections.singleton(result.getIndex()), indices);
+        // 3.新索引中的文档数与导入的一致
+        long count = restHighLevelClient.count(new CountRequest(HotelConstants.HOTEL_INDEX), RequestOptions.DEFAULT)
+            .getCount();
+        assertEquals(result.getTotal().longValue(), count);
+    }
+
     @Test
     public void testSuggest() {
         try {
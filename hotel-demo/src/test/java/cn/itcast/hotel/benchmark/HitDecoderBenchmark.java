@@ -0,0 +1,96 @@
+package cn.itcast.hotel.benchmark;
+
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.service.impl.HitDecoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.search.DocValueFormat;
+import org.elasticsearch.search.SearchHit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比解析一页搜索结果的耗时和内存分配：
+ * perHitMapper 为原来的做法，每个hit创建ObjectMapper并转成String；hitDecoder 为HitDecoder。
+ * 运行main方法，带GC profiler，gc.alloc.rate.norm 即每页分配的字节数
+ *
+ * @author kaede
+ * @create 2026-10-18
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HitDecoderBenchmark {
+
+    private static final String SOURCE = "{\"id\":%d,\"name\":\"上海希尔顿酒店\",\"address\":\"静安华山路250号\","
+        + "\"price\":2688,\"score\":37,\"brand\":\"希尔顿\",\"city\":\"上海\",\"starName\":\"五星级\","
+        + "\"business\":\"静安寺地区\",\"location\":\"31.219306, 121.445427\","
+        + "\"pic\":\"https://m.tuniucdn.com/filebroker/cdn/res/92/10/9210e74442aceceaf6e196d61fc3b6b1_w200_h200_c1_t0.jpg\","
+        + "\"suggestion\":[\"希尔顿\",\"静安寺地区\"]}";
+
+    @Param({"10", "50"})
+    private int pageSize;
+
+    private SearchHit[] hits;
+
+    @Setup
+    public void setup() {
+        hits = new SearchHit[pageSize];
+        for (int i = 0; i < pageSize; i++) {
+            String id = String.valueOf(60000 + i);
+            SearchHit hit = new SearchHit(i, id, new Text("_doc"), Collections.emptyMap());
+            hit.sourceRef(new BytesArray(String.format(SOURCE, 60000 + i).getBytes(StandardCharsets.UTF_8)));
+            hit.sortValues(new Object[]{1.5 + i, id}, new DocValueFormat[]{DocValueFormat.RAW, DocValueFormat.RAW});
+            hits[i] = hit;
+        }
+    }
+
+    @Benchmark
+    public List<HotelDoc> perHitMapper() throws IOException {
+        List<HotelDoc> hotels = new ArrayList<>();
+        for (SearchHit hit : hits) {
+            HotelDoc hotelDoc = new ObjectMapper().readValue(hit.getSourceAsString(), HotelDoc.class);
+            hotelDoc.setDistance(hit.getSortValues()[0]);
+            hotels.add(hotelDoc);
+        }
+        return hotels;
+    }
+
+    @Benchmark
+    public List<HotelDoc> hitDecoder() throws IOException {
+        return HitDecoder.decode(hits, true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+            .include(HitDecoderBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+}
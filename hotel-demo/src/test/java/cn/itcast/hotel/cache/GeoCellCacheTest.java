@@ -0,0 +1,171 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.config.SearchCacheProperties;
+import cn.itcast.hotel.config.SearchProperties;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.PageResult;
+import cn.itcast.hotel.pojo.RequestParams;
+import cn.itcast.hotel.service.impl.SearchCursor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoCellCacheTest {
+
+    // 用户坐标，候选酒店都在它的正北方，纬度每0.001度约0.111km
+    private static final double LAT = 31.2;
+    private static final double LON = 121.4;
+
+    private final GeoCellCache cache = new GeoCellCache(new SearchCacheProperties(), new SearchProperties(),
+        new SimpleMeterRegistry());
+
+    @AfterEach
+    void stop() {
+        cache.stop();
+    }
+
+    @Test
+    void rankSortsByDistanceToUserThenById() {
+        RequestParams params = params(1, 3, null);
+        GeoCandidates candidates = complete(hotel(3, 0.002), hotel(2, 0.001), hotel(1, 0.001));
+
+        PageResult result = cache.rank(params, cache.keyOf(params), candidates);
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(result));
+        assertEquals(0.111, ((Number) result.getHotels().get(0).getDistance()).doubleValue(), 0.001);
+        assertEquals(0.222, ((Number) result.getHotels().get(2).getDistance()).doubleValue(), 0.001);
+    }
+
+    @Test
+    void cursorContinuesAfterLastHotel() {
+        GeoCandidates candidates = complete(hotel(1, 0.001), hotel(2, 0.002), hotel(3, 0.003), hotel(4, 0.004));
+        RequestParams first = params(1, 2, null);
+        PageResult page1 = cache.rank(first, cache.keyOf(first), candidates);
+        assertTrue(SearchCursor.decode(page1.getCursor()).isLocal());
+
+        RequestParams next = params(1, 2, page1.getCursor());
+        PageResult page2 = cache.rank(next, cache.keyOf(next), candidates);
+
+        assertEquals(Arrays.asList(1L, 2L), ids(page1));
+        assertEquals(Arrays.asList(3L, 4L), ids(page2));
+    }
+
+    @Test
+    void cursorFromAnotherLocationIsRejected() {
+        GeoCandidates candidates = complete(hotel(1, 0.001), hotel(2, 0.002), hotel(3, 0.003));
+        RequestParams first = params(1, 2, null);
+        String cursor = cache.rank(first, cache.keyOf(first), candidates).getCursor();
+
+        RequestParams moved = params(1, 2, cursor);
+        moved.setLocation((LAT + 0.01) + ", " + LON);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.rank(moved, cache.keyOf(moved), candidates));
+    }
+
+    @Test
+    void pageInsideSafeRadiusIsServed() {
+        RequestParams params = params(1, 2, null);
+        GeoCellKey key = cache.keyOf(params);
+        // 安全半径为1km
+        GeoCandidates candidates = partial(key, 1.0, hotel(1, 0.001), hotel(2, 0.002), hotel(3, 0.010));
+
+        assertNotNull(cache.rank(params, key, candidates));
+    }
+
+    @Test
+    void pageBeyondSafeRadiusFallsBack() {
+        RequestParams params = params(2, 1, null);
+        GeoCellKey key = cache.keyOf(params);
+        // 第2页是约1.1km外的酒店，候选集之外可能还有更近的酒店
+        GeoCandidates candidates = partial(key, 1.0, hotel(1, 0.001), hotel(2, 0.010));
+
+        assertNull(cache.rank(params, key, candidates));
+    }
+
+    @Test
+    void shortPageOfPartialCandidatesFallsBack() {
+        RequestParams params = params(2, 2, null);
+        GeoCellKey key = cache.keyOf(params);
+        GeoCandidates candidates = partial(key, 1.0, hotel(1, 0.001), hotel(2, 0.002), hotel(3, 0.003));
+
+        assertNull(cache.rank(params, key, candidates));
+    }
+
+    @Test
+    void shortPageOfCompleteCandidatesIsServed() {
+        RequestParams params = params(2, 2, null);
+        GeoCandidates candidates = complete(hotel(1, 0.001), hotel(2, 0.002), hotel(3, 0.003));
+
+        PageResult result = cache.rank(params, cache.keyOf(params), candidates);
+
+        assertEquals(Arrays.asList(3L), ids(result));
+        assertNull(result.getCursor());
+    }
+
+    @Test
+    void onlyLocalCursorsUseCandidates() {
+        String sort = SearchCursor.sortOf(LAT + ", " + LON);
+        assertTrue(cache.supports(params(1, 10, null)));
+        assertTrue(cache.supports(params(1, 10, SearchCursor.encodeLocal(sort, new Object[]{0.5, "1"}))));
+        // ES生成的游标是ES算出的距离，不能和本地距离比较
+        assertFalse(cache.supports(params(1, 10, SearchCursor.encode(sort, new Object[]{0.5, "1"}))));
+        assertFalse(cache.supports(params(1, 10, "not-a-cursor")));
+    }
+
+    @Test
+    void cancellingSearchCancelsCandidateLoad() {
+        CompletableFuture<GeoCandidates> loading = new CompletableFuture<>();
+
+        CompletableFuture<PageResult> result = cache.searchAsync(params(1, 10, null), key -> loading);
+        result.cancel(false);
+
+        assertTrue(loading.isCancelled());
+    }
+
+    private static RequestParams params(int page, int size, String cursor) {
+        RequestParams params = new RequestParams();
+        params.setLocation(LAT + ", " + LON);
+        params.setPage(page);
+        params.setSize(size);
+        params.setCursor(cursor);
+        return params;
+    }
+
+    private static HotelDoc hotel(long id, double north) {
+        HotelDoc hotel = new HotelDoc();
+        hotel.setId(id);
+        hotel.setLocation((LAT + north) + ", " + LON);
+        return hotel;
+    }
+
+    private static GeoCandidates complete(HotelDoc... hotels) {
+        return new GeoCandidates((long) hotels.length, Arrays.asList(hotels), 0.0, true);
+    }
+
+    // 候选集不完整，安全半径为safeRadius
+    private static GeoCandidates partial(GeoCellKey key, double safeRadius, HotelDoc... hotels) {
+        double radius = safeRadius + GeoCellCache.halfDiagonal(key.getCell());
+        return new GeoCandidates(100L, Arrays.asList(hotels), radius, false);
+    }
+
+    private static List<Long> ids(PageResult result) {
+        List<Long> ids = new ArrayList<>();
+        for (HotelDoc hotel : result.getHotels()) {
+            ids.add(hotel.getId());
+        }
+        return ids;
+    }
+
+}
@@ -0,0 +1,121 @@
+package cn.itcast.hotel.cache;
+
+import cn.itcast.hotel.config.SearchCacheProperties;
+import cn.itcast.hotel.pojo.HotelDoc;
+import cn.itcast.hotel.pojo.PageResult;
+import cn.itcast.hotel.pojo.RequestParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SearchResultCacheTest {
+
+    private final SearchResultCache cache =
+        new SearchResultCache(new SearchCacheProperties(), new SimpleMeterRegistry());
+
+    @AfterEach
+    void stop() {
+        cache.stop();
+    }
+
+    @Test
+    void secondSearchIsServedFromCache() {
+        AtomicInteger loads = new AtomicInteger();
+        PageResult result = page();
+
+        cache.get(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return result;
+        });
+        PageResult cached = cache.get(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return page();
+        });
+
+        assertSame(result, cached);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidationDuringLoadDoesNotCacheStaleResult() {
+        AtomicInteger loads = new AtomicInteger();
+
+        // 搜索期间有酒店变更，读到的可能是变更前的结果
+        cache.get(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            cache.invalidate(Collections.singletonList(hotel("上海")));
+            return page();
+        });
+        cache.get(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return page();
+        });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationDuringAsyncLoadDoesNotCacheStaleResult() {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<PageResult> pending = new CompletableFuture<>();
+
+        cache.getAsync(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return pending;
+        });
+        cache.invalidate(Collections.singletonList(hotel("上海")));
+        pending.complete(page());
+        cache.getAsync(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(page());
+        });
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidationOnlyRemovesMatchingEntries() {
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(params("上海"), false, p -> page());
+        cache.get(params("北京"), false, p -> page());
+
+        cache.invalidate(Collections.singletonList(hotel("北京")));
+        cache.get(params("上海"), false, p -> {
+            loads.incrementAndGet();
+            return page();
+        });
+        cache.get(params("北京"), false, p -> {
+            loads.incrementAndGet();
+            return page();
+        });
+
+        assertEquals(1, loads.get());
+    }
+
+    private static RequestParams params(String city) {
+        RequestParams params = new RequestParams();
+        params.setCity(city);
+        params.setPage(1);
+        params.setSize(10);
+        return params;
+    }
+
+    private static HotelDoc hotel(String city) {
+        HotelDoc hotel = new HotelDoc();
+        hotel.setId(1L);
+        hotel.setCity(city);
+        return hotel;
+    }
+
+    private static PageResult page() {
+        return new PageResult(0L, Collections.emptyList());
+    }
+
+}
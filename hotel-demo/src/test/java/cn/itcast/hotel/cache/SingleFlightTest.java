@@ -0,0 +1,115 @@
+package cn.itcast.hotel.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flight = new SingleFlight<>("test", new SimpleMeterRegistry());
+
+    @Test
+    void concurrentCallersShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> first = executor.submit(() -> flight.execute("k", () -> {
+                loads.incrementAndGet();
+                entered.countDown();
+                await(release);
+                return "v";
+            }));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+            // 第一个请求还在执行，第二个请求加入它而不是再查一次
+            CompletableFuture<String> second = flight.executeAsync("k", () -> {
+                loads.incrementAndGet();
+                return CompletableFuture.completedFuture("other");
+            });
+            release.countDown();
+
+            assertEquals("v", first.get(5, TimeUnit.SECONDS));
+            assertEquals("v", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void failurePropagatesToAllWaiters() {
+        CompletableFuture<String> underlying = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("k", () -> underlying);
+        CompletableFuture<String> second = flight.executeAsync("k", () -> CompletableFuture.completedFuture("other"));
+
+        IllegalStateException failure = new IllegalStateException("es down");
+        underlying.completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(ExecutionException.class, first::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, second::get).getCause());
+    }
+
+    @Test
+    void failedLoadIsNotReused() {
+        AtomicInteger loads = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> flight.execute("k", () -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("es down");
+        }));
+
+        assertEquals("v", flight.execute("k", () -> {
+            loads.incrementAndGet();
+            return "v";
+        }));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void cancellingOneWaiterKeepsTheLoadForOthers() {
+        CompletableFuture<String> underlying = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("k", () -> underlying);
+        CompletableFuture<String> second = flight.executeAsync("k", () -> underlying);
+
+        first.cancel(false);
+        assertFalse(underlying.isCancelled());
+        underlying.complete("v");
+
+        assertEquals("v", second.join());
+    }
+
+    @Test
+    void cancellingAllWaitersCancelsTheLoad() {
+        CompletableFuture<String> underlying = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.executeAsync("k", () -> underlying);
+        CompletableFuture<String> second = flight.executeAsync("k", () -> underlying);
+
+        first.cancel(false);
+        second.cancel(false);
+
+        assertTrue(underlying.isCancelled());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.config.ReindexProperties;
+import cn.itcast.hotel.mq.HotelIndexer;
+import cn.itcast.hotel.mq.IndexSpool;
+import cn.itcast.hotel.pojo.HotelChange;
+import cn.itcast.hotel.service.IHotelService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class HotelReindexJobTest {
+
+    private final IndexWriteTargets indexWriteTargets = new IndexWriteTargets();
+    private final DocFingerprints docFingerprints = new DocFingerprints();
+    private final IHotelService hotelService = mock(IHotelService.class);
+    private HotelIndexer hotelIndexer;
+    private HotelReindexJob job;
+
+    @BeforeEach
+    void start() {
+        IndexerProperties properties = new IndexerProperties();
+        properties.setLanes(1);
+        // 每条消息都立即发送，不等合并窗口
+        properties.setBatchSize(1);
+        properties.setSpoolEnabled(false);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        hotelIndexer = new HotelIndexer(hotelService, properties, new IndexSpool(properties, meterRegistry),
+            meterRegistry);
+        hotelIndexer.start();
+        job = new HotelReindexJob(null, null, indexWriteTargets, null, null, hotelIndexer, docFingerprints,
+            new ReindexProperties());
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        hotelIndexer.stop();
+    }
+
+    @Test
+    void hotelDeletedDuringLoadIsResyncedFromDatabase() {
+        indexWriteTargets.startBuilding("hotel_new");
+        // 导入期间增量同步删掉了酒店5，导入读到的旧数据又在新索引中创建了它
+        indexWriteTargets.touch(5L);
+        docFingerprints.put(5L, 42L);
+        when(hotelService.bulkSync(anyList())).thenReturn(Collections.emptyMap());
+
+        job.resyncTouched();
+
+        // 按数据库当前状态重新同步，数据库中没有了就会从新索引删掉
+        List<HotelChange> expected = Collections.singletonList(new HotelChange(5L, false, null));
+        verify(hotelService).bulkSync(expected);
+        // 指纹清掉，否则内容没有变化时会跳过写入
+        assertFalse(docFingerprints.contains(5L));
+        assertTrue(indexWriteTargets.drainTouched().isEmpty());
+    }
+
+    @Test
+    void updateArrivingDuringResyncIsAppliedAfterIt() throws Exception {
+        indexWriteTargets.startBuilding("hotel_new");
+        indexWriteTargets.touch(5L);
+        List<List<HotelChange>> calls = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        CountDownLatch resyncing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(hotelService.bulkSync(anyList())).thenAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            calls.add(new ArrayList<>(invocation.<List<HotelChange>>getArgument(0)));
+            if (calls.size() == 1) {
+                // 重新同步已经读过数据库，还没写入ES
+                resyncing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            active.decrementAndGet();
+            return Collections.emptyMap();
+        });
+        Channel channel = mock(Channel.class);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> resync = executor.submit(job::resyncTouched);
+            assertTrue(resyncing.await(5, TimeUnit.SECONDS));
+            // 这时酒店5又有一次带版本号的修改
+            hotelIndexer.submit(new HotelChange(5L, false, 100L), channel, 1);
+            Thread.sleep(200);
+            assertEquals(1, calls.size());
+            release.countDown();
+            resync.get(5, TimeUnit.SECONDS);
+
+            // 实时变更排在重新同步之后，写入的是后读到的数据库状态
+            verify(channel, timeout(5000)).basicAck(1, false);
+            assertEquals(Arrays.asList(
+                Collections.singletonList(new HotelChange(5L, false, null)),
+                Collections.singletonList(new HotelChange(5L, false, 100L))), calls);
+            assertEquals(1, maxActive.get());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void nothingTouchedSyncsNothing() {
+        indexWriteTargets.startBuilding("hotel_new");
+
+        job.resyncTouched();
+
+        verifyNoInteractions(hotelService);
+    }
+
+    @Test
+    void failedResyncAbortsReindex() {
+        indexWriteTargets.startBuilding("hotel_new");
+        indexWriteTargets.touch(5L);
+        when(hotelService.bulkSync(anyList())).thenReturn(Collections.singletonMap(5L, "es rejected"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, job::resyncTouched);
+        assertTrue(e.getMessage().contains("es rejected"));
+    }
+
+    @Test
+    void touchOutsideReindexIsIgnored() {
+        indexWriteTargets.touch(5L);
+
+        assertEquals(Collections.emptySet(), indexWriteTargets.drainTouched());
+    }
+
+}
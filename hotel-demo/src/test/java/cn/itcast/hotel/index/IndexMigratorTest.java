@@ -0,0 +1,149 @@
+package cn.itcast.hotel.index;
+
+import cn.itcast.hotel.pojo.MigrationPlan;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.elasticsearch.common.settings.Settings;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexMigratorTest {
+
+    // 最初的HotelConstants.MAPPING_TEMPLATE中的properties
+    private static final String ORIGINAL_PROPERTIES = "{" +
+        "\"id\":{\"type\":\"keyword\"}," +
+        "\"name\":{\"type\":\"text\",\"analyzer\":\"ik_max_word\",\"copy_to\":\"all\"}," +
+        "\"address\":{\"type\":\"keyword\",\"index\":false}," +
+        "\"price\":{\"type\":\"integer\"}," +
+        "\"score\":{\"type\":\"integer\"}," +
+        "\"brand\":{\"type\":\"keyword\",\"copy_to\":\"all\"}," +
+        "\"city\":{\"type\":\"keyword\"}," +
+        "\"starName\":{\"type\":\"keyword\"}," +
+        "\"business\":{\"type\":\"keyword\",\"copy_to\":\"all\"}," +
+        "\"location\":{\"type\":\"geo_point\"}," +
+        "\"pic\":{\"type\":\"keyword\",\"index\":false}," +
+        "\"all\":{\"type\":\"text\",\"analyzer\":\"ik_max_word\"}" +
+        "}";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void baselineMatchesOriginalTemplate() throws Exception {
+        String baseline = MAPPER.writeValueAsString(HotelIndexDefinitions.baseline().getFields());
+
+        assertEquals(ORIGINAL_PROPERTIES, baseline);
+        assertFalse(HotelIndexDefinitions.baseline().getFields().containsKey("checksum"));
+        assertTrue(HotelIndexDefinitions.tuned(1, 1, false).getFields().containsKey("checksum"));
+    }
+
+    @Test
+    void sameDefinitionNeedsNothing() {
+        IndexDefinition baseline = HotelIndexDefinitions.baseline();
+
+        MigrationPlan plan = compare(baseline, mapping(baseline)).plan;
+
+        assertEquals(MigrationPlan.Action.NONE, plan.getAction());
+        assertTrue(plan.getChanges().isEmpty());
+    }
+
+    @Test
+    void defaultParamsReturnedByEsAreNotChanges() {
+        IndexDefinition baseline = HotelIndexDefinitions.baseline();
+        Map<String, Object> mapping = mapping(baseline);
+        field(mapping, "city").put("index", true);
+        field(mapping, "city").put("eager_global_ordinals", false);
+        // ES返回的copy_to是数组
+        field(mapping, "brand").put("copy_to", Collections.singletonList("all"));
+
+        assertEquals(MigrationPlan.Action.NONE, compare(baseline, mapping).plan.getAction());
+    }
+
+    @Test
+    void newFieldIsAddedInPlace() {
+        IndexDefinition baseline = HotelIndexDefinitions.baseline();
+        Map<String, Object> mapping = mapping(baseline);
+        properties(mapping).remove("pic");
+
+        IndexMigrator.Diff diff = compare(baseline, mapping);
+
+        assertEquals(MigrationPlan.Action.UPDATE, diff.plan.getAction());
+        assertEquals(Collections.singleton("pic"), diff.fields.keySet());
+    }
+
+    @Test
+    void typeChangeNeedsReindex() {
+        IndexDefinition baseline = HotelIndexDefinitions.baseline();
+        Map<String, Object> mapping = mapping(baseline);
+        field(mapping, "price").put("type", "long");
+
+        assertEquals(MigrationPlan.Action.REINDEX, compare(baseline, mapping).plan.getAction());
+    }
+
+    @Test
+    void routingChangeNeedsReindex() {
+        IndexDefinition target = HotelIndexDefinitions.tuned(3, 1, true);
+        Map<String, Object> mapping = mapping(HotelIndexDefinitions.tuned(3, 1, false));
+
+        MigrationPlan plan = IndexMigrator.compare("hotel_v2", target, mapping, target.getSettings()).plan;
+
+        assertEquals(MigrationPlan.Action.REINDEX, plan.getAction());
+    }
+
+    @Test
+    void fieldsOnlyInIndexAreReported() {
+        IndexDefinition baseline = HotelIndexDefinitions.baseline();
+        Map<String, Object> mapping = mapping(baseline);
+        // 使用版本1时写入的checksum由动态映射生成
+        properties(mapping).put("checksum", new LinkedHashMap<>(Collections.singletonMap("type", "long")));
+
+        MigrationPlan plan = compare(baseline, mapping).plan;
+
+        assertEquals(1, plan.getChanges().size());
+        assertTrue(plan.getChanges().get(0).contains("checksum"));
+        // 字段不能删除，不为此修改或重建索引
+        assertEquals(MigrationPlan.Action.NONE, plan.getAction());
+    }
+
+    @Test
+    void dynamicSettingIsUpdatedInPlace() {
+        IndexDefinition target = HotelIndexDefinitions.tuned(3, 1, false);
+        Settings current = Settings.builder().put(target.getSettings()).put("index.number_of_replicas", "0").build();
+
+        IndexMigrator.Diff diff = IndexMigrator.compare("hotel_v2", target, mapping(target), current);
+
+        assertEquals(MigrationPlan.Action.UPDATE, diff.plan.getAction());
+        assertEquals(Collections.singletonList("1"), diff.settings.build().getAsList("index.number_of_replicas"));
+    }
+
+    private static IndexMigrator.Diff compare(IndexDefinition target, Map<String, Object> mapping) {
+        return IndexMigrator.compare("hotel_v1", target, mapping, target.getSettings());
+    }
+
+    // 模拟ES返回的mapping，可以修改
+    private static Map<String, Object> mapping(IndexDefinition definition) {
+        Map<String, Object> mapping = new LinkedHashMap<>(definition.mapping());
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (Map.Entry<String, Map<String, Object>> field : definition.getFields().entrySet()) {
+            properties.put(field.getKey(), new LinkedHashMap<>(field.getValue()));
+        }
+        mapping.put("properties", properties);
+        return mapping;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> properties(Map<String, Object> mapping) {
+        return (Map<String, Object>) mapping.get("properties");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> field(Map<String, Object> mapping, String name) {
+        return (Map<String, Object>) properties(mapping).get(name);
+    }
+
+}
@@ -0,0 +1,239 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.pojo.HotelChange;
+import cn.itcast.hotel.service.IHotelService;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+class HotelIndexerTest {
+
+    private final IndexerProperties properties = new IndexerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IHotelService hotelService = mock(IHotelService.class);
+    private final Channel channel = mock(Channel.class);
+    // 每次bulkSync收到的变更
+    private final List<List<HotelChange>> synced = Collections.synchronizedList(new ArrayList<>());
+    // bulkSync返回的失败明细
+    private final Map<Long, String> failures = new ConcurrentHashMap<>();
+    private IndexSpool indexSpool;
+    private HotelIndexer indexer;
+
+    @BeforeEach
+    void setUp() {
+        properties.setLanes(1);
+        properties.setSpoolEnabled(false);
+        properties.setFlushInterval(Duration.ofMillis(20));
+        // 合并窗口足够长，默认只有攒满一批才发送
+        properties.setCoalesceWindow(Duration.ofMinutes(1));
+        doAnswer(invocation -> {
+            synced.add(new ArrayList<>(invocation.<List<HotelChange>>getArgument(0)));
+            return new ConcurrentHashMap<>(failures);
+        }).when(hotelService).bulkSync(anyList());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (indexer != null) {
+            indexer.stop();
+        }
+        if (indexSpool != null) {
+            indexSpool.close();
+        }
+    }
+
+    @Test
+    void deleteAfterInsertWins() throws IOException {
+        properties.setBatchSize(2);
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(1L, true, null), channel, 2);
+
+        verify(channel, timeout(5000)).basicAck(2, false);
+        assertEquals(Collections.singletonList(Collections.singletonList(new HotelChange(1L, true, null))), synced);
+    }
+
+    @Test
+    void olderVersionDoesNotReplaceNewerPendingChange() throws IOException {
+        properties.setBatchSize(2);
+        start();
+
+        // 两个队列之间没有顺序，版本3的删除晚于版本5的修改到达
+        indexer.submit(new HotelChange(1L, false, 5L), channel, 1);
+        indexer.submit(new HotelChange(1L, true, 3L), channel, 2);
+
+        verify(channel, timeout(5000)).basicAck(2, false);
+        assertEquals(Collections.singletonList(Collections.singletonList(new HotelChange(1L, false, 5L))), synced);
+    }
+
+    @Test
+    void coalescedDeliveriesAreAckedTogetherAfterOneBulkSync() throws IOException {
+        properties.setBatchSize(3);
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(1L, false, null), channel, 2);
+        indexer.submit(new HotelChange(1L, false, null), channel, 3);
+
+        verify(channel, timeout(5000)).basicAck(1, false);
+        verify(channel, timeout(5000)).basicAck(2, false);
+        verify(channel, timeout(5000)).basicAck(3, false);
+        assertEquals(1, synced.size());
+        assertEquals(1, synced.get(0).size());
+    }
+
+    @Test
+    void partialLaneWaitsForCoalesceWindow() throws Exception {
+        properties.setBatchSize(100);
+        properties.setCoalesceWindow(Duration.ofMillis(300));
+        start();
+        long start = System.nanoTime();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        Thread.sleep(100);
+        assertTrue(synced.isEmpty());
+
+        verify(channel, timeout(5000)).basicAck(1, false);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 300);
+        assertEquals(1, synced.size());
+    }
+
+    @Test
+    void fullLaneFlushesWithoutWaitingForWindow() throws IOException {
+        properties.setBatchSize(2);
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(2L, false, null), channel, 2);
+
+        // 合并窗口为1分钟，攒满batchSize后立即发送
+        verify(channel, timeout(2000)).basicAck(1, false);
+        verify(channel, timeout(2000)).basicAck(2, false);
+        assertEquals(Collections.singletonList(Arrays.asList(
+            new HotelChange(1L, false, null), new HotelChange(2L, false, null))), synced);
+    }
+
+    @Test
+    void messagesAreAckedOnlyAfterBulkSyncReturns() throws Exception {
+        properties.setBatchSize(1);
+        CountDownLatch syncing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            syncing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyMap();
+        }).when(hotelService).bulkSync(anyList());
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        assertTrue(syncing.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        verifyNoInteractions(channel);
+        release.countDown();
+
+        verify(channel, timeout(5000)).basicAck(1, false);
+    }
+
+    @Test
+    void failedItemIsNackedAndRestOfBatchAcked() throws IOException {
+        properties.setBatchSize(3);
+        failures.put(2L, "mapper_parsing_exception");
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(2L, false, null), channel, 2);
+        indexer.submit(new HotelChange(3L, false, null), channel, 3);
+
+        verify(channel, timeout(5000)).basicNack(2, false, true);
+        verify(channel, timeout(5000)).basicAck(1, false);
+        verify(channel, timeout(5000)).basicAck(3, false);
+        verify(channel, never()).basicAck(2, false);
+    }
+
+    @Test
+    void failedItemIsSpooledThenAcked(@TempDir Path dir) throws IOException {
+        properties.setBatchSize(2);
+        properties.setSpoolEnabled(true);
+        properties.setSpoolPath(dir.resolve("hotel-index.spool").toString());
+        properties.setSpoolSize(16 + 24 * 16);
+        // 测试期间不重放
+        properties.setSpoolRetryMin(Duration.ofHours(1));
+        failures.put(2L, "es_rejected_execution_exception");
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(2L, false, 7L), channel, 2);
+
+        verify(channel, timeout(5000)).basicAck(1, false);
+        verify(channel, timeout(5000)).basicAck(2, false);
+        verify(channel, never()).basicNack(anyLong(), anyBoolean(), anyBoolean());
+        // 只有失败的酒店写入了暂存文件
+        assertEquals(1, indexSpool.size(), 0);
+    }
+
+    @Test
+    void failedBulkRequestNacksWholeBatch() throws IOException {
+        properties.setBatchSize(2);
+        doThrow(new IllegalStateException("es down")).when(hotelService).bulkSync(anyList());
+        start();
+
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(2L, false, null), channel, 2);
+
+        verify(channel, timeout(5000)).basicNack(1, false, true);
+        verify(channel, timeout(5000)).basicNack(2, false, true);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void fullLaneAfterStopLeavesMessagesUnacked() throws Exception {
+        properties.setBatchSize(2);
+        start();
+        indexer.stop();
+
+        // 关闭期间监听容器还可能投递消息，攒满一批时不能抛出RejectedExecutionException
+        indexer.submit(new HotelChange(1L, false, null), channel, 1);
+        indexer.submit(new HotelChange(2L, false, null), channel, 2);
+
+        // 不ack也不nack，连接关闭后由MQ重新投递
+        verifyNoInteractions(channel, hotelService);
+    }
+
+    private void start() throws IOException {
+        indexSpool = new IndexSpool(properties, meterRegistry);
+        indexSpool.open();
+        indexer = new HotelIndexer(hotelService, properties, indexSpool, meterRegistry);
+        indexer.start();
+    }
+
+}
@@ -0,0 +1,207 @@
+package cn.itcast.hotel.mq;
+
+import cn.itcast.hotel.config.IndexerProperties;
+import cn.itcast.hotel.pojo.HotelChange;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexSpoolTest {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+
+    @TempDir
+    Path dir;
+
+    private final IndexerProperties properties = new IndexerProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // 每次重放收到的酒店id
+    private final List<List<Long>> replayed = new ArrayList<>();
+    // 重放失败的酒店
+    private final Map<Long, String> failures = new ConcurrentHashMap<>();
+    // 重放期间要做的事
+    private Consumer<List<HotelChange>> duringReplay = changes -> { };
+    private IndexSpool spool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        properties.setSpoolPath(dir.resolve("hotel-index.spool").toString());
+        // 最多放6条记录
+        properties.setSpoolSize(HEADER_SIZE + RECORD_SIZE * 6);
+        properties.setBatchSize(100);
+        // 后台线程不会自己重放，由测试调用drain
+        properties.setSpoolRetryMin(Duration.ofHours(1));
+        spool = open();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        spool.close();
+    }
+
+    @Test
+    void replaysAsSyncFromDatabaseAndKeepsVersion() {
+        List<HotelChange> seen = new ArrayList<>();
+        duringReplay = seen::addAll;
+        spool.append(Arrays.asList(new HotelChange(1L, true, 5L), new HotelChange(2L, false, null)));
+
+        spool.drain();
+
+        // 删除也按数据库的当前状态同步
+        assertEquals(Arrays.asList(new HotelChange(1L, false, 5L), new HotelChange(2L, false, null)), seen);
+        assertEquals(0, spool.size(), 0);
+    }
+
+    @Test
+    void failedChangeIsRetriedUntilMaxAttempts() {
+        properties.setSpoolMaxAttempts(2);
+        failures.put(1L, "es down");
+        spool.append(Arrays.asList(new HotelChange(1L, false, null), new HotelChange(2L, false, null)));
+
+        // 第1次失败，追加到末尾
+        spool.drain();
+        assertEquals(1, spool.size(), 0);
+        // 第2次失败，重试次数用完，丢弃
+        spool.drain();
+
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Collections.singletonList(1L)), replayed);
+        assertEquals(0, spool.size(), 0);
+        assertEquals(1, meterRegistry.counter("hotel.indexer.spool.dropped").count(), 0);
+    }
+
+    @Test
+    void replayFailureKeepsWholeBatch() {
+        duringReplay = changes -> {
+            throw new IllegalStateException("es down");
+        };
+        spool.append(Collections.singletonList(new HotelChange(1L, false, null)));
+
+        spool.drain();
+
+        assertEquals(1, spool.size(), 0);
+    }
+
+    @Test
+    void fullFileIsRejectedUntilReplayedSpaceCanBeReused() {
+        assertTrue(spool.append(changes(1, 6)));
+        assertFalse(spool.append(changes(7, 7)));
+
+        // 重放前3条，读位置之前空出3条的位置，剩下的3条挪到开头后就能追加
+        properties.setBatchSize(3);
+        spool.drain();
+        assertTrue(spool.append(changes(7, 9)));
+        assertFalse(spool.append(changes(10, 10)));
+
+        properties.setBatchSize(100);
+        spool.drain();
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L, 8L, 9L), replayed.get(1));
+    }
+
+    @Test
+    void compactionDuringReplayKeepsReadPosition() {
+        spool.append(changes(1, 4));
+        properties.setBatchSize(2);
+        spool.drain();
+        // 重放3的期间有3条新的失败变更，末尾放不下，把3、4挪到开头
+        properties.setBatchSize(1);
+        duringReplay = changes -> assertTrue(spool.append(changes(5, 7)));
+        spool.drain();
+
+        duringReplay = changes -> { };
+        properties.setBatchSize(100);
+        spool.drain();
+        assertEquals(Arrays.asList(4L, 5L, 6L, 7L), replayed.get(2));
+        assertEquals(0, spool.size(), 0);
+    }
+
+    @Test
+    void reopenContinuesFromPersistedPositions() throws Exception {
+        spool.append(changes(1, 3));
+        properties.setBatchSize(1);
+        spool.drain();
+        spool.close();
+
+        spool = open();
+
+        assertEquals(2, spool.size(), 0);
+        properties.setBatchSize(100);
+        spool.drain();
+        assertEquals(Arrays.asList(2L, 3L), replayed.get(1));
+    }
+
+    @Test
+    void corruptedRecordIsSkipped() throws Exception {
+        spool.append(changes(1, 3));
+        spool.close();
+        // 改坏第2条记录的id
+        try (RandomAccessFile file = new RandomAccessFile(properties.getSpoolPath(), "rw")) {
+            file.seek(HEADER_SIZE + RECORD_SIZE + 7);
+            file.write(0x7f);
+        }
+
+        spool = open();
+        spool.drain();
+
+        assertEquals(Arrays.asList(1L, 3L), replayed.get(0));
+        assertEquals(0, spool.size(), 0);
+    }
+
+    @Test
+    void invalidHeaderResetsFile() throws Exception {
+        spool.append(changes(1, 2));
+        spool.close();
+        try (RandomAccessFile file = new RandomAccessFile(properties.getSpoolPath(), "rw")) {
+            // 写位置不在记录边界上
+            file.seek(8);
+            file.writeLong(HEADER_SIZE + 5);
+        }
+
+        spool = open();
+
+        assertEquals(0, spool.size(), 0);
+        assertTrue(spool.append(changes(1, 6)));
+    }
+
+    private IndexSpool open() throws IOException {
+        IndexSpool opened = new IndexSpool(properties, meterRegistry);
+        opened.open();
+        opened.startReplay(changes -> {
+            List<Long> ids = new ArrayList<>();
+            for (HotelChange change : changes) {
+                ids.add(change.getId());
+            }
+            replayed.add(ids);
+            duringReplay.accept(changes);
+            return new ConcurrentHashMap<>(failures);
+        });
+        return opened;
+    }
+
+    private static List<HotelChange> changes(long from, long to) {
+        List<HotelChange> changes = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            changes.add(new HotelChange(id, false, null));
+        }
+        return changes;
+    }
+
+}
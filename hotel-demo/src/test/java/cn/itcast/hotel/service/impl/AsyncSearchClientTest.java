@@ -0,0 +1,76 @@
+package cn.itcast.hotel.service.impl;
+
+import org.apache.http.util.EntityUtils;
+import org.elasticsearch.action.search.SearchRequest;
+import org.elasticsearch.client.Request;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncSearchClientTest {
+
+    @Test
+    void rawRequestCarriesRouting() throws IOException {
+        SearchRequest request = new SearchRequest("hotel").routing("上海");
+        request.source().query(QueryBuilders.termQuery("city", "上海")).size(10);
+
+        Request raw = AsyncSearchClient.rawRequest(request, RawSearchWriter.PARAMETERS);
+
+        assertEquals("POST", raw.getMethod());
+        assertEquals("/hotel/_search", raw.getEndpoint());
+        assertEquals("上海", raw.getParameters().get("routing"));
+        assertEquals(RawSearchWriter.PARAMETERS.get("filter_path"), raw.getParameters().get("filter_path"));
+        assertTrue(EntityUtils.toString(raw.getEntity()).contains("\"city\""));
+    }
+
+    @Test
+    void rawRequestWithoutRoutingSearchesAllShards() {
+        SearchRequest request = new SearchRequest("hotel");
+        request.source().size(10);
+
+        Request raw = AsyncSearchClient.rawRequest(request, RawSearchWriter.PARAMETERS);
+
+        assertFalse(raw.getParameters().containsKey("routing"));
+    }
+
+    @Test
+    void composeCancelsFirstStage() {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> result = AsyncSearchClient.compose(first, CompletableFuture::completedFuture);
+
+        result.cancel(false);
+
+        assertTrue(first.isCancelled());
+    }
+
+    @Test
+    void composeCancelsSecondStage() {
+        CompletableFuture<String> second = new CompletableFuture<>();
+        CompletableFuture<String> result = AsyncSearchClient.compose(
+            CompletableFuture.completedFuture("candidates"), value -> second);
+
+        result.cancel(false);
+
+        assertTrue(second.isCancelled());
+    }
+
+    @Test
+    void composeUnwrapsFailures() {
+        IllegalArgumentException failure = new IllegalArgumentException("bad cursor");
+        CompletableFuture<String> first = CompletableFuture.completedFuture("candidates");
+        CompletableFuture<String> result = AsyncSearchClient.compose(first.thenApply(value -> value),
+            value -> AsyncSearchClient.<String>failed(failure));
+
+        assertSame(failure, assertThrows(ExecutionException.class, result::get).getCause());
+    }
+
+}
@@ -0,0 +1,59 @@
+package cn.itcast.hotel.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchCursorTest {
+
+    private static final String GEO = SearchCursor.sortOf("31.2, 121.4");
+    private static final String SCORE = SearchCursor.sortOf(null);
+
+    @Test
+    void roundTripKeepsSortValues() {
+        Object[] sortValues = {1.5, "36934"};
+
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.encode(SCORE, sortValues), SCORE);
+
+        assertArrayEquals(sortValues, cursor.getAfter());
+        assertArrayEquals(sortValues, cursor.searchAfter());
+        assertFalse(cursor.isLocal());
+    }
+
+    @Test
+    void localCursorCannotBeUsedForSearchAfter() {
+        SearchCursor cursor = SearchCursor.decode(SearchCursor.encodeLocal(GEO, new Object[]{0.3, "1"}), GEO);
+
+        assertTrue(cursor.isLocal());
+        assertThrows(IllegalArgumentException.class, cursor::searchAfter);
+    }
+
+    @Test
+    void sortShapeIgnoresLocationFormatting() {
+        assertEquals(GEO, SearchCursor.sortOf("31.2,121.4"));
+        assertEquals(SCORE, SearchCursor.sortOf(" "));
+    }
+
+    @Test
+    void cursorFromAnotherSortIsRejected() {
+        String scoreCursor = SearchCursor.encode(SCORE, new Object[]{1.5, "1"});
+        String geoCursor = SearchCursor.encode(GEO, new Object[]{0.3, "1"});
+
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(scoreCursor, GEO));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode(geoCursor, SCORE));
+        // 换了坐标，距离不再可比
+        assertThrows(IllegalArgumentException.class,
+            () -> SearchCursor.decode(geoCursor, SearchCursor.sortOf("31.3, 121.4")));
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("not a cursor", SCORE));
+        assertThrows(IllegalArgumentException.class, () -> SearchCursor.decode("W10", SCORE));
+    }
+
+}